@@ -1,5 +1,8 @@
 package com.jzy.ai.nav;
 
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.CsrGraph;
+import com.jzy.ai.pfa.GraphPath;
 import com.jzy.javalib.math.geometry.Vector3;
 
 import java.util.List;
@@ -12,6 +15,10 @@ import java.util.List;
  * @mail 359135103@qq.com
  */
 public abstract class NavMesh {
+    /**
+     * 射线检测交点比例误差
+     */
+    protected static final float RAYCAST_EPSILON = 1e-5f;
 
     /**
      * 地图宽x轴
@@ -103,4 +110,186 @@ public abstract class NavMesh {
         return getPointInPath(point.x, point.z) != null;
     }
 
+    /**
+     * 射线检测，从起点沿直线走向终点
+     *
+     * @param from
+     * @param to
+     * @param hit  输出结果，可为null
+     * @return true 碰到边界，不能直线到达
+     */
+    public abstract boolean raycast(Vector3 from, Vector3 to, NavMeshRaycastHit hit);
+
+    /**
+     * 线段from-to与线段a-b所在直线的交点，忽略高度
+     *
+     * @param from
+     * @param to
+     * @param a
+     * @param b
+     * @param out  输出，[0]为交点在from-to上的比例，[1]为交点在a-b上的比例
+     * @return 平行返回false
+     */
+    protected static boolean intersectSegment(Vector3 from, Vector3 to, Vector3 a, Vector3 b, float[] out) {
+        float rx = to.x - from.x;
+        float rz = to.z - from.z;
+        float sx = b.x - a.x;
+        float sz = b.z - a.z;
+        float denominator = rx * sz - rz * sx;
+        if (denominator == 0) {
+            return false;
+        }
+        float qx = a.x - from.x;
+        float qz = a.z - from.z;
+        out[0] = (qx * sz - qz * sx) / denominator;
+        out[1] = (qx * rz - qz * rx) / denominator;
+        return true;
+    }
+
+    /**
+     * 射线检测，沿共享边从起点单元走向终点
+     * <p>
+     * 凸单元的出口为交点比例最大的边，出口边是共享边时进入相邻单元，否则碰到边界
+     *
+     * @param graph        CSR图，按共享边顶点序号查找穿过的共享边，没有顶点序号(-1)时通过共享边对象获取顶点
+     * @param pathVertices 顶点，共享边顶点序号对应的坐标
+     * @param cells        单元顶点访问
+     * @param start        起点所在单元
+     * @param from
+     * @param to
+     * @param hit          输出结果，可为null
+     * @param corridor     输出，射线经过的共享边，可为null
+     * @return true 碰到边界
+     */
+    protected static <N> boolean raycast(CsrGraph<N> graph, Vector3[] pathVertices, RaycastCells<N> cells, N start,
+                                         Vector3 from, Vector3 to, NavMeshRaycastHit hit,
+                                         GraphPath<Connection<N>> corridor) {
+        if (hit != null) {
+            hit.reset();
+        }
+        if (start == null) {
+            if (hit != null) {
+                hit.hit = true;
+                hit.point.set(from);
+            }
+            return true;
+        }
+        float[] intersection = new float[2];
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] portals = graph.getPortals();
+        N current = start;
+        int currentIndex = graph.getIndex(start);
+        int previousIndex = -1;
+        float fraction = 0;
+        int maxSteps = graph.getNodeCount();
+        for (int step = 0; step < maxSteps; step++) {
+            if (cells.isInnerPoint(current, to)) {
+                if (hit != null) {
+                    hit.fraction = 1;
+                    hit.point.set(to.x, cells.getY(current), to.z);
+                    hit.nodeIndex = currentIndex;
+                }
+                return false;
+            }
+            // 出口为交点比例最大的边
+            float exit = -1;
+            float exitRatio = 0;
+            Vector3 exitStart = null;
+            Vector3 exitEnd = null;
+            int size = cells.getVertexCount(current);
+            for (int i = 0; i < size; i++) {
+                Vector3 a = cells.getVertex(current, i);
+                Vector3 b = cells.getVertex(current, i + 1 == size ? 0 : i + 1);
+                if (intersectSegment(from, to, a, b, intersection) && intersection[1] >= -RAYCAST_EPSILON
+                        && intersection[1] <= 1 + RAYCAST_EPSILON && intersection[0] > exit) {
+                    exit = intersection[0];
+                    exitRatio = intersection[1];
+                    exitStart = a;
+                    exitEnd = b;
+                }
+            }
+            if (exitStart == null || exit < fraction - RAYCAST_EPSILON) {
+                break;
+            }
+            exit = Math.min(exit, 1);
+            // 按CSR共享边顶点序号查找穿过的共享边
+            int next = -1;
+            for (int edge = offsets[currentIndex]; edge < offsets[currentIndex + 1]; edge++) {
+                if (targets[edge] == previousIndex) {
+                    continue;
+                }
+                int rightIndex = portals[edge << 1];
+                int leftIndex = portals[(edge << 1) + 1];
+                Vector3 right = rightIndex < 0 ? cells.getPortalRight(graph.getConnection(edge))
+                        : pathVertices[rightIndex];
+                Vector3 left = leftIndex < 0 ? cells.getPortalLeft(graph.getConnection(edge))
+                        : pathVertices[leftIndex];
+                if (intersectSegment(from, to, right, left, intersection)
+                        && intersection[1] >= -RAYCAST_EPSILON && intersection[1] <= 1 + RAYCAST_EPSILON
+                        && Math.abs(intersection[0] - exit) <= RAYCAST_EPSILON) {
+                    next = targets[edge];
+                    if (corridor != null) {
+                        corridor.add(graph.getConnection(edge));
+                    }
+                    break;
+                }
+            }
+            if (next < 0) {
+                if (hit != null) {
+                    hit.hit = true;
+                    hit.fraction = exit;
+                    hit.point.set(from.x + (to.x - from.x) * exit,
+                            exitStart.y + (exitEnd.y - exitStart.y) * exitRatio, from.z + (to.z - from.z) * exit);
+                    hit.edgeStart.set(exitStart);
+                    hit.edgeEnd.set(exitEnd);
+                    hit.nodeIndex = currentIndex;
+                }
+                return true;
+            }
+            previousIndex = currentIndex;
+            currentIndex = next;
+            current = graph.getNode(next);
+            fraction = exit;
+        }
+        // 数值误差找不到出口，按碰到边界处理
+        if (hit != null) {
+            hit.hit = true;
+            hit.fraction = fraction;
+            hit.point.set(from.x + (to.x - from.x) * fraction, cells.getY(current),
+                    from.z + (to.z - from.z) * fraction);
+            hit.nodeIndex = currentIndex;
+        }
+        return true;
+    }
+
+    /**
+     * 射线检测访问的网格单元(多边形或三角形)，顶点按边的顺序排列
+     *
+     * @param <N> 单元类型
+     */
+    protected interface RaycastCells<N> {
+
+        int getVertexCount(N cell);
+
+        Vector3 getVertex(N cell, int i);
+
+        boolean isInnerPoint(N cell, Vector3 point);
+
+        /**
+         * 单元高度
+         */
+        float getY(N cell);
+
+        /**
+         * 共享边右顶点
+         */
+        Vector3 getPortalRight(Connection<N> connection);
+
+        /**
+         * 共享边左顶点
+         */
+        Vector3 getPortalLeft(Connection<N> connection);
+    }
+
 }
@@ -6,8 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * navmesh寻路三角形网格数据 <br>
@@ -56,14 +54,29 @@ public class NavMeshData implements Serializable {
      */
     protected boolean threeDimensional;
 
+    /**
+     * 重复顶点合并精度，0只合并坐标完全相同的顶点
+     */
+    protected transient float vertexWeldEpsilon;
+    /**
+     * 数据检测时合并的重复顶点数
+     */
+    protected transient int mergedVertexCount;
+
     /**
      * 数据检测，客户端的顶点坐标和三角形数据有可能是重复的
      * <br>
      */
     public void check(int scale) {
-        amendmentSameVector(pathTriangles, pathVertices);
+        mergedVertexCount = amendmentSameVector(pathTriangles, pathVertices, vertexWeldEpsilon);
         scaleVector(pathVertices, scale);
+        calculateBounds();
+    }
 
+    /**
+     * 计算地图宽高和中心点
+     */
+    protected void calculateBounds() {
         this.width = Math.abs(this.getEndX() - this.getStartX());
         this.height = Math.abs(this.getEndZ() - this.getStartZ());
         this.centerPsoition = new Vector3((endX - startX) / 2, (endZ - startZ) / 2);
@@ -90,28 +103,39 @@ public class NavMeshData implements Serializable {
      * <p>
      * unity的NavMeshData有一些共边的三角形，共边的三角形其实不是连通关系，共边的三角形只是他们共同构成一个凸多边形，并且这种共边的三角形，全部都是扇形排列。
      * </p>
+     *
+     * @return 合并的顶点数
      */
-    public void amendmentSameVector(int[] indexs, Vector3[] vertices) {
+    public int amendmentSameVector(int[] indexs, Vector3[] vertices) {
+        return amendmentSameVector(indexs, vertices, 0);
+    }
+
+    /**
+     * 修正重复坐标，坐标相同或相近的下标修改为序号最小的顶点
+     *
+     * @param indexs
+     * @param vertices
+     * @param epsilon  合并精度，0只合并坐标完全相同的顶点 {@link VertexWelder}
+     * @return 合并的顶点数
+     */
+    public int amendmentSameVector(int[] indexs, Vector3[] vertices, float epsilon) {
         if (indexs == null || vertices == null) {
-            return;
+            return 0;
         }
-        Map<Vector3, Integer> map = new HashMap<>();
-        // 检测路径重复点
-        for (int i = 0; i < vertices.length; i++) {
-            // 重复出现的坐标
-            if (map.containsKey(vertices[i])) {
-                for (int j = 0; j < indexs.length; j++) {
-                    if (indexs[j] == i) { // 修正重复的坐标
-                        // System.out.println(String.format("坐标重复为%s",
-                        // indexs[j],i,vertices[i].toString()));
-                        indexs[j] = map.get(vertices[i]);
-                    }
-                }
-                // vertices[i] = null;
-            } else {
-                map.put(vertices[i], i);
+        int[] remap = VertexWelder.weld(vertices, epsilon);
+        int merged = 0;
+        for (int i = 0; i < remap.length; i++) {
+            if (remap[i] != i) {
+                merged++;
             }
         }
+        if (merged > 0) {
+            for (int j = 0; j < indexs.length; j++) {
+                indexs[j] = remap[indexs[j]];
+            }
+            LOGGER.debug("地图{}合并重复顶点{}个", mapID, merged);
+        }
+        return merged;
     }
 
 
@@ -192,6 +216,30 @@ public class NavMeshData implements Serializable {
         return centerPsoition;
     }
 
+    public float getVertexWeldEpsilon() {
+        return vertexWeldEpsilon;
+    }
+
+    /**
+     * 设置重复顶点合并精度，需在构建导航图(TriangleGraph、PolygonGraph)前设置，构建时数据检测使用
+     * <p>
+     * 三角形导航网格通过 TriangleNavMesh 构造参数传入
+     *
+     * @param vertexWeldEpsilon
+     */
+    public void setVertexWeldEpsilon(float vertexWeldEpsilon) {
+        this.vertexWeldEpsilon = vertexWeldEpsilon;
+    }
+
+    /**
+     * 数据检测时合并的重复顶点数
+     *
+     * @return
+     */
+    public int getMergedVertexCount() {
+        return mergedVertexCount;
+    }
+
     public boolean isThreeDimensional() {
         return threeDimensional;
     }
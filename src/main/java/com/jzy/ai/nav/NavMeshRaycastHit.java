@@ -0,0 +1,56 @@
+package com.jzy.ai.nav;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 导航网格射线检测结果
+ * <p>
+ * 射线沿起点到终点的直线穿过共享边，碰到不可行走的边界边时停止，忽略高度
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class NavMeshRaycastHit {
+    /**
+     * 是否碰到边界，false直线可达
+     */
+    public boolean hit;
+    /**
+     * 到达的比例，0为起点，1为终点
+     */
+    public float fraction;
+    /**
+     * 到达的坐标点，碰到边界为碰撞点，高度按所在的边或多边形计算
+     */
+    public final Vector3 point = new Vector3();
+    /**
+     * 碰到的边界边起点
+     */
+    public final Vector3 edgeStart = new Vector3();
+    /**
+     * 碰到的边界边终点
+     */
+    public final Vector3 edgeEnd = new Vector3();
+    /**
+     * 射线最后所在的多边形(三角形)序号，起点不在行走层为-1
+     */
+    public int nodeIndex = -1;
+
+    /**
+     * 重置，可复用
+     */
+    public void reset() {
+        hit = false;
+        fraction = 0;
+        point.set(0, 0, 0);
+        edgeStart.set(0, 0, 0);
+        edgeEnd.set(0, 0, 0);
+        nodeIndex = -1;
+    }
+
+    @Override
+    public String toString() {
+        return "NavMeshRaycastHit{hit=" + hit + ", fraction=" + fraction + ", point=" + point + ", nodeIndex="
+                + nodeIndex + "}";
+    }
+}
@@ -0,0 +1,168 @@
+package com.jzy.ai.nav;
+
+/**
+ * 均匀网格索引，三角形网格、随机点、边界边索引共用
+ * <p>
+ * 元素按外包矩形(AABB)放入覆盖的所有网格，网格内元素按序号升序存储(CSR)。
+ * 网格边长取元素外包矩形的平均尺寸，每个元素只覆盖少量网格；网格数不超过元素数的 {@link #MAX_CELLS_PER_ITEM} 倍，避免大量空网格。
+ * <p>
+ * 构建后只读，可多线程共享。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class UniformGrid {
+    /**
+     * 网格数上限为元素数的倍数
+     */
+    private static final int MAX_CELLS_PER_ITEM = 4;
+    private final float minX;
+    private final float minZ;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    /**
+     * cellItems[cellOffsets[c]..cellOffsets[c+1]) 为网格c内的元素序号
+     */
+    private final int[] cellOffsets;
+    private final int[] cellItems;
+
+    /**
+     * @param bounds 元素外包矩形，每个元素4个：minX minZ maxX maxZ
+     */
+    public UniformGrid(float[] bounds) {
+        int count = bounds.length / 4;
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        double extent = 0;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            minX = Math.min(minX, bounds[o]);
+            minZ = Math.min(minZ, bounds[o + 1]);
+            maxX = Math.max(maxX, bounds[o + 2]);
+            maxZ = Math.max(maxZ, bounds[o + 3]);
+            extent += Math.max(bounds[o + 2] - bounds[o], bounds[o + 3] - bounds[o + 1]);
+        }
+        if (count == 0) {
+            minX = minZ = maxX = maxZ = 0;
+        }
+        float width = maxX - minX;
+        float height = maxZ - minZ;
+        float cellSize = count > 0 ? (float) (extent / count) : 1;
+        float minCellSize = (float) Math.sqrt((double) width * height / Math.max(1, count * MAX_CELLS_PER_ITEM));
+        cellSize = Math.max(Math.max(cellSize, minCellSize), 1e-3f);
+        this.minX = minX;
+        this.minZ = minZ;
+        this.cellSize = cellSize;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+
+        // 两遍构建：先统计网格元素数，再填充
+        int cellCount = columns * rows;
+        this.cellOffsets = new int[cellCount + 1];
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            int c1 = column(bounds[o + 2]), r1 = row(bounds[o + 3]);
+            for (int c = column(bounds[o]); c <= c1; c++) {
+                for (int r = row(bounds[o + 1]); r <= r1; r++) {
+                    cellOffsets[c * rows + r + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < cellCount; i++) {
+            cellOffsets[i + 1] += cellOffsets[i];
+        }
+        this.cellItems = new int[cellOffsets[cellCount]];
+        int[] fill = new int[cellCount];
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            int c1 = column(bounds[o + 2]), r1 = row(bounds[o + 3]);
+            for (int c = column(bounds[o]); c <= c1; c++) {
+                for (int r = row(bounds[o + 1]); r <= r1; r++) {
+                    int cell = c * rows + r;
+                    cellItems[cellOffsets[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * 坐标点所在网格
+     *
+     * @param x
+     * @param z
+     * @return 超出范围返回-1
+     */
+    public int cell(float x, float z) {
+        float column = (x - minX) / cellSize;
+        float row = (z - minZ) / cellSize;
+        // NaN也不满足条件
+        if (!(column >= 0 && row >= 0 && column < columns && row < rows)) {
+            return -1;
+        }
+        return (int) column * rows + (int) row;
+    }
+
+    /**
+     * 网格序号
+     *
+     * @param column 列
+     * @param row    行
+     * @return
+     */
+    public int cell(int column, int row) {
+        return column * rows + row;
+    }
+
+    /**
+     * x坐标所在列，超出范围取边缘列
+     */
+    public int column(float x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+    }
+
+    /**
+     * z坐标所在行，超出范围取边缘行
+     */
+    public int row(float z) {
+        return Math.min(rows - 1, Math.max(0, (int) ((z - minZ) / cellSize)));
+    }
+
+    /**
+     * 网格元素偏移，长度为网格数+1，请勿修改
+     *
+     * @return
+     */
+    public int[] getCellOffsets() {
+        return cellOffsets;
+    }
+
+    /**
+     * 网格元素序号，请勿修改
+     *
+     * @return
+     */
+    public int[] getCellItems() {
+        return cellItems;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,111 @@
+package com.jzy.ai.nav;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.Arrays;
+
+/**
+ * 重复顶点合并
+ * <p>
+ * 顶点坐标量化为网格坐标，放入开放寻址哈希表，一遍计算每个顶点合并到的顶点序号，序号小的顶点保留。
+ * 精度为0时按坐标二进制值比较，只合并完全相同的顶点；大于0时检查相邻网格，各轴坐标差不超过精度的顶点合并。
+ * 不使用可变的Vector3作为哈希键。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class VertexWelder {
+
+    private VertexWelder() {
+    }
+
+    /**
+     * 计算顶点映射
+     *
+     * @param vertices
+     * @param epsilon  合并精度，0只合并完全相同的顶点
+     * @return 每个顶点合并到的顶点序号，未合并为自身
+     */
+    public static int[] weld(Vector3[] vertices, float epsilon) {
+        int count = vertices.length;
+        int[] remap = new int[count];
+        int capacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        int mask = capacity - 1;
+        // 网格坐标及网格内第一个保留顶点
+        int[] slotX = new int[capacity];
+        int[] slotY = new int[capacity];
+        int[] slotZ = new int[capacity];
+        int[] slotHead = new int[capacity];
+        Arrays.fill(slotHead, -1);
+        // 同一网格内保留顶点链表
+        int[] next = new int[count];
+        int range = epsilon > 0 ? 1 : 0;
+        for (int i = 0; i < count; i++) {
+            Vector3 vertex = vertices[i];
+            int cx = key(vertex.x, epsilon);
+            int cy = key(vertex.y, epsilon);
+            int cz = key(vertex.z, epsilon);
+            int target = -1;
+            for (int dx = -range; dx <= range; dx++) {
+                for (int dy = -range; dy <= range; dy++) {
+                    for (int dz = -range; dz <= range; dz++) {
+                        int slot = find(slotX, slotY, slotZ, slotHead, mask, cx + dx, cy + dy, cz + dz);
+                        for (int j = slotHead[slot]; j >= 0; j = next[j]) {
+                            if ((target < 0 || j < target) && same(vertices[j], vertex, epsilon)) {
+                                target = j;
+                            }
+                        }
+                    }
+                }
+            }
+            if (target >= 0) {
+                remap[i] = target;
+                continue;
+            }
+            remap[i] = i;
+            int slot = find(slotX, slotY, slotZ, slotHead, mask, cx, cy, cz);
+            if (slotHead[slot] < 0) {
+                slotX[slot] = cx;
+                slotY[slot] = cy;
+                slotZ[slot] = cz;
+                next[i] = -1;
+            } else {
+                next[i] = slotHead[slot];
+            }
+            slotHead[slot] = i;
+        }
+        return remap;
+    }
+
+    /**
+     * 网格坐标所在的槽位，不存在时返回空槽位
+     */
+    private static int find(int[] slotX, int[] slotY, int[] slotZ, int[] slotHead, int mask, int x, int y, int z) {
+        int slot = mix(x, y, z) & mask;
+        while (slotHead[slot] >= 0 && (slotX[slot] != x || slotY[slot] != y || slotZ[slot] != z)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int key(float value, float epsilon) {
+        if (epsilon > 0) {
+            return (int) Math.floor(value / epsilon);
+        }
+        return Float.floatToIntBits(value);
+    }
+
+    private static boolean same(Vector3 a, Vector3 b, float epsilon) {
+        if (epsilon > 0) {
+            return Math.abs(a.x - b.x) <= epsilon && Math.abs(a.y - b.y) <= epsilon && Math.abs(a.z - b.z) <= epsilon;
+        }
+        return Float.floatToIntBits(a.x) == Float.floatToIntBits(b.x)
+                && Float.floatToIntBits(a.y) == Float.floatToIntBits(b.y)
+                && Float.floatToIntBits(a.z) == Float.floatToIntBits(b.z);
+    }
+
+    private static int mix(int x, int y, int z) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,486 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.nav.UniformGrid;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按面积加权的随机点按需生成
+ * <p>
+ * 不预生成随机点，只保存三角形顶点坐标和累计面积表，内存为三角形数量级的float数组，
+ * 随机点不再局限于预生成的集合。整个地图取点按累计面积二分查找三角形，再在三角形内均匀取点；
+ * 范围取点通过三角形网格索引找出与圆环(半径和最小距离之间)有交集的三角形，每个三角形在
+ * 外包矩形与范围矩形的交集、三角形本身中取面积较小者作为取点区域，按该面积加权均匀取点，
+ * 拒绝三角形外和圆环外的点，结果在可行走区域内均匀分布。
+ * 狭长三角形或圆环很窄时拒绝率高，{@link #MAX_ATTEMPTS} 次都被拒绝后在候选三角形与圆环的交集中取一个确定的点，
+ * 此时不保证均匀分布，但只要范围内有可行走区域就能取到点；只有高度差限制排除所有候选点时才会失败。
+ * <p>
+ * 面积按xz平面计算。构建后只读，可多线程共享，随机数使用 {@link ThreadLocalRandom}。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class AreaRandomPointSampler {
+    /**
+     * 范围取点随机尝试次数，之后取确定的点
+     */
+    private static final int MAX_ATTEMPTS = 32;
+    /**
+     * 确定点向三角形重心移动的比例
+     */
+    private static final float NUDGE = 1e-3f;
+    /**
+     * 三角形顶点坐标，每个三角形9个：ax ay az bx by bz cx cy cz
+     */
+    private final float[] coords;
+    /**
+     * 累计面积，cumulativeAreas[i]为前i+1个三角形的面积和
+     */
+    private final double[] cumulativeAreas;
+    /**
+     * 三角形网格索引
+     */
+    private final UniformGrid grid;
+
+    /**
+     * @param triangles 三角形顶点序号，每3个一组
+     * @param vertices  顶点
+     */
+    public AreaRandomPointSampler(int[] triangles, Vector3[] vertices) {
+        int count = triangles.length / 3;
+        this.coords = new float[count * 9];
+        this.cumulativeAreas = new double[count];
+        float[] bounds = new float[count * 4];
+        double area = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < 3; j++) {
+                Vector3 vertex = vertices[triangles[i * 3 + j]];
+                coords[i * 9 + j * 3] = vertex.x;
+                coords[i * 9 + j * 3 + 1] = vertex.y;
+                coords[i * 9 + j * 3 + 2] = vertex.z;
+            }
+            area += area(i);
+            cumulativeAreas[i] = area;
+            bounds[i * 4] = minX(i);
+            bounds[i * 4 + 1] = minZ(i);
+            bounds[i * 4 + 2] = maxX(i);
+            bounds[i * 4 + 3] = maxZ(i);
+        }
+        this.grid = new UniformGrid(bounds);
+    }
+
+    /**
+     * 整个地图随机一个点
+     *
+     * @param out 输出
+     * @return 没有可行走区域返回false
+     */
+    public boolean random(Vector3 out) {
+        int count = cumulativeAreas.length;
+        if (count == 0 || cumulativeAreas[count - 1] <= 0) {
+            return false;
+        }
+        Random random = ThreadLocalRandom.current();
+        int triangle = search(cumulativeAreas, count, random.nextDouble() * cumulativeAreas[count - 1]);
+        float sr1 = (float) Math.sqrt(random.nextFloat());
+        float r2 = random.nextFloat();
+        float k1 = 1 - sr1;
+        float k2 = sr1 * (1 - r2);
+        float k3 = sr1 * r2;
+        int o = triangle * 9;
+        out.x = k1 * coords[o] + k2 * coords[o + 3] + k3 * coords[o + 6];
+        out.y = k1 * coords[o + 1] + k2 * coords[o + 4] + k3 * coords[o + 7];
+        out.z = k1 * coords[o + 2] + k2 * coords[o + 5] + k3 * coords[o + 8];
+        return true;
+    }
+
+    /**
+     * 范围内随机一个点
+     *
+     * @param center
+     * @param radius        半径
+     * @param minDistance   到中心点的最小距离
+     * @param maxHeightDiff 与中心点的最大高度差，不验证高度传 {@link Float#POSITIVE_INFINITY}
+     * @param out           输出
+     * @return 范围内没有可行走区域，或高度差限制排除了取到的点返回false
+     */
+    public boolean sample(Vector3 center, float radius, float minDistance, float maxHeightDiff, Vector3 out) {
+        Candidates candidates = collect(center, radius, minDistance, maxHeightDiff);
+        return candidates != null && candidates.sample(center, radius, minDistance, maxHeightDiff, out);
+    }
+
+    /**
+     * 范围内随机多个点
+     *
+     * @param center
+     * @param radius
+     * @param minDistance
+     * @param maxHeightDiff
+     * @param out           输出，取满out.length个，为null的位置创建新对象
+     * @return 取到的个数，少于out.length说明范围内没有满足条件的点
+     */
+    public int sample(Vector3 center, float radius, float minDistance, float maxHeightDiff, Vector3[] out) {
+        Candidates candidates = collect(center, radius, minDistance, maxHeightDiff);
+        if (candidates == null) {
+            return 0;
+        }
+        int count = 0;
+        while (count < out.length) {
+            if (out[count] == null) {
+                out[count] = new Vector3();
+            }
+            if (!candidates.sample(center, radius, minDistance, maxHeightDiff, out[count])) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 与范围圆环有交集的三角形
+     *
+     * @return 没有返回null
+     */
+    private Candidates collect(Vector3 center, float radius, float minDistance, float maxHeightDiff) {
+        float x0 = center.x - radius, x1 = center.x + radius;
+        float z0 = center.z - radius, z1 = center.z + radius;
+        int c0 = grid.column(x0), c1 = grid.column(x1);
+        int r0 = grid.row(z0), r1 = grid.row(z1);
+        int[] cellOffsets = grid.getCellOffsets();
+        int[] cellTriangles = grid.getCellItems();
+        Candidates candidates = new Candidates();
+        for (int c = c0; c <= c1; c++) {
+            for (int r = r0; r <= r1; r++) {
+                int cell = grid.cell(c, r);
+                for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                    int triangle = cellTriangles[i];
+                    // 三角形可能在多个网格中，只在与查询范围相交的第一个网格中处理
+                    if (c != Math.max(c0, grid.column(minX(triangle)))
+                            || r != Math.max(r0, grid.row(minZ(triangle)))) {
+                        continue;
+                    }
+                    float rx0 = Math.max(x0, minX(triangle)), rx1 = Math.min(x1, maxX(triangle));
+                    float rz0 = Math.max(z0, minZ(triangle)), rz1 = Math.min(z1, maxZ(triangle));
+                    if (rx0 >= rx1 || rz0 >= rz1 || area(triangle) <= 0 || !inHeight(triangle, center.y, maxHeightDiff)
+                            || !anchor(triangle, center.x, center.z, radius, minDistance, candidates.point)) {
+                        continue;
+                    }
+                    candidates.add(triangle, rx0, rz0, rx1, rz1);
+                }
+            }
+        }
+        return candidates.size > 0 ? candidates : null;
+    }
+
+    private boolean inHeight(int triangle, float y, float maxHeightDiff) {
+        int o = triangle * 9;
+        float minY = Math.min(coords[o + 1], Math.min(coords[o + 4], coords[o + 7]));
+        float maxY = Math.max(coords[o + 1], Math.max(coords[o + 4], coords[o + 7]));
+        return minY - y < maxHeightDiff && y - maxY < maxHeightDiff;
+    }
+
+    /**
+     * 坐标点在三角形内时输出坐标，高度按三角形平面插值
+     */
+    private boolean pointInTriangle(int triangle, float x, float z, Vector3 out) {
+        int o = triangle * 9;
+        float ax = coords[o], ay = coords[o + 1], az = coords[o + 2];
+        float abx = coords[o + 3] - ax, abz = coords[o + 5] - az;
+        float acx = coords[o + 6] - ax, acz = coords[o + 8] - az;
+        float px = x - ax, pz = z - az;
+        float denominator = abx * acz - abz * acx;
+        if (denominator == 0) {
+            return false;
+        }
+        float u = (px * acz - pz * acx) / denominator;
+        float v = (abx * pz - abz * px) / denominator;
+        if (u < 0 || v < 0 || u + v > 1) {
+            return false;
+        }
+        out.set(x, ay + u * (coords[o + 4] - ay) + v * (coords[o + 7] - ay), z);
+        return true;
+    }
+
+    /**
+     * 三角形平面上坐标点的高度，不检查是否在三角形内
+     */
+    private float height(int triangle, float x, float z) {
+        int o = triangle * 9;
+        float ax = coords[o], ay = coords[o + 1], az = coords[o + 2];
+        float abx = coords[o + 3] - ax, abz = coords[o + 5] - az;
+        float acx = coords[o + 6] - ax, acz = coords[o + 8] - az;
+        float px = x - ax, pz = z - az;
+        float denominator = abx * acz - abz * acx;
+        if (denominator == 0) {
+            return (ay + coords[o + 4] + coords[o + 7]) / 3;
+        }
+        float u = (px * acz - pz * acx) / denominator;
+        float v = (abx * pz - abz * px) / denominator;
+        return ay + u * (coords[o + 4] - ay) + v * (coords[o + 7] - ay);
+    }
+
+    /**
+     * 三角形与圆环(到中心点距离在minDistance和radius之间)交集中的一个确定点，忽略高度
+     * <p>
+     * 优先取圆环内的顶点，其次取三角形上离中心点最近的点；最近点在内圆内时，
+     * 沿最近点到圆外顶点的线段取到中心点距离为圆环中间的点，三角形是凸的，该点在三角形内
+     *
+     * @param out 输出，[0]为x [1]为z
+     * @return 交集为空返回false
+     */
+    private boolean anchor(int triangle, float cx, float cz, float radius, float minDistance, float[] out) {
+        float radiusSq = radius * radius;
+        float minDistanceSq = minDistance * minDistance;
+        if (minDistance > radius) {
+            return false;
+        }
+        int o = triangle * 9;
+        int far = -1;
+        for (int i = 0; i < 3; i++) {
+            float dx = coords[o + i * 3] - cx;
+            float dz = coords[o + i * 3 + 2] - cz;
+            float distanceSq = dx * dx + dz * dz;
+            if (distanceSq >= minDistanceSq && distanceSq <= radiusSq) {
+                out[0] = coords[o + i * 3];
+                out[1] = coords[o + i * 3 + 2];
+                return true;
+            }
+            if (distanceSq > radiusSq) {
+                far = i;
+            }
+        }
+        float closestSq = closestPoint(triangle, cx, cz, out);
+        if (closestSq > radiusSq) {
+            return false;
+        }
+        if (closestSq >= minDistanceSq) {
+            return true;
+        }
+        if (far < 0) {
+            // 三角形在内圆内
+            return false;
+        }
+        float middle = (minDistance + radius) / 2;
+        float px = out[0] - cx, pz = out[1] - cz;
+        float vx = coords[o + far * 3] - out[0], vz = coords[o + far * 3 + 2] - out[1];
+        float a = vx * vx + vz * vz;
+        float b = 2 * (px * vx + pz * vz);
+        float c = px * px + pz * pz - middle * middle;
+        float t = (float) ((-b + Math.sqrt(Math.max(0, b * b - 4 * a * c))) / (2 * a));
+        t = t < 0 ? 0 : (t > 1 ? 1 : t);
+        out[0] += vx * t;
+        out[1] += vz * t;
+        return true;
+    }
+
+    /**
+     * 确定点可能在三角形顶点或边上，向三角形重心稍微移动，避免落在多边形边界上；移动后超出圆环则不移动
+     */
+    private void nudge(int triangle, float cx, float cz, float radiusSq, float minDistanceSq, float[] point) {
+        int o = triangle * 9;
+        float gx = (coords[o] + coords[o + 3] + coords[o + 6]) / 3;
+        float gz = (coords[o + 2] + coords[o + 5] + coords[o + 8]) / 3;
+        float x = point[0] + (gx - point[0]) * NUDGE;
+        float z = point[1] + (gz - point[1]) * NUDGE;
+        float dx = x - cx, dz = z - cz;
+        float distanceSq = dx * dx + dz * dz;
+        if (distanceSq >= minDistanceSq && distanceSq <= radiusSq) {
+            point[0] = x;
+            point[1] = z;
+        }
+    }
+
+    /**
+     * 三角形上离坐标点最近的点，忽略高度
+     *
+     * @param out 输出，[0]为x [1]为z
+     * @return 水平距离的平方，点在三角形内为0
+     */
+    private float closestPoint(int triangle, float x, float z, float[] out) {
+        int o = triangle * 9;
+        float ax = coords[o], az = coords[o + 2];
+        float abx = coords[o + 3] - ax, abz = coords[o + 5] - az;
+        float acx = coords[o + 6] - ax, acz = coords[o + 8] - az;
+        float denominator = abx * acz - abz * acx;
+        if (denominator != 0) {
+            float u = ((x - ax) * acz - (z - az) * acx) / denominator;
+            float v = (abx * (z - az) - abz * (x - ax)) / denominator;
+            if (u >= 0 && v >= 0 && u + v <= 1) {
+                out[0] = x;
+                out[1] = z;
+                return 0;
+            }
+        }
+        float minDistanceSq = Float.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            int a = o + i * 3;
+            int b = o + (i + 1) % 3 * 3;
+            float sx = coords[a], sz = coords[a + 2];
+            float dx = coords[b] - sx, dz = coords[b + 2] - sz;
+            float lengthSq = dx * dx + dz * dz;
+            float t = lengthSq == 0 ? 0 : ((x - sx) * dx + (z - sz) * dz) / lengthSq;
+            t = t < 0 ? 0 : (t > 1 ? 1 : t);
+            float px = sx + dx * t, pz = sz + dz * t;
+            float distanceSq = (x - px) * (x - px) + (z - pz) * (z - pz);
+            if (distanceSq < minDistanceSq) {
+                minDistanceSq = distanceSq;
+                out[0] = px;
+                out[1] = pz;
+            }
+        }
+        return minDistanceSq;
+    }
+
+    /**
+     * 三角形xz平面面积
+     */
+    private float area(int triangle) {
+        int o = triangle * 9;
+        float abx = coords[o + 3] - coords[o], abz = coords[o + 5] - coords[o + 2];
+        float acx = coords[o + 6] - coords[o], acz = coords[o + 8] - coords[o + 2];
+        return Math.abs(abx * acz - abz * acx) * 0.5f;
+    }
+
+    private float minX(int triangle) {
+        int o = triangle * 9;
+        return Math.min(coords[o], Math.min(coords[o + 3], coords[o + 6]));
+    }
+
+    private float maxX(int triangle) {
+        int o = triangle * 9;
+        return Math.max(coords[o], Math.max(coords[o + 3], coords[o + 6]));
+    }
+
+    private float minZ(int triangle) {
+        int o = triangle * 9;
+        return Math.min(coords[o + 2], Math.min(coords[o + 5], coords[o + 8]));
+    }
+
+    private float maxZ(int triangle) {
+        int o = triangle * 9;
+        return Math.max(coords[o + 2], Math.max(coords[o + 5], coords[o + 8]));
+    }
+
+    /**
+     * 累计值中第一个大于value的位置
+     */
+    private static int search(double[] cumulative, int size, double value) {
+        int low = 0, high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 三角形数量
+     *
+     * @return
+     */
+    public int getTriangleCount() {
+        return cumulativeAreas.length;
+    }
+
+    /**
+     * 范围取点的候选三角形及其取点区域
+     */
+    private final class Candidates {
+        private int[] triangles = new int[16];
+        /**
+         * 取点区域为矩形时的矩形：x0 z0 x1 z1
+         */
+        private float[] rects = new float[16 * 4];
+        /**
+         * 取点区域是否为三角形本身
+         */
+        private boolean[] inTriangle = new boolean[16];
+        private double[] cumulative = new double[16];
+        private int size;
+        /**
+         * 确定点计算的临时输出
+         */
+        private final float[] point = new float[2];
+
+        private void add(int triangle, float x0, float z0, float x1, float z1) {
+            if (size == triangles.length) {
+                triangles = Arrays.copyOf(triangles, size * 2);
+                rects = Arrays.copyOf(rects, size * 8);
+                inTriangle = Arrays.copyOf(inTriangle, size * 2);
+                cumulative = Arrays.copyOf(cumulative, size * 2);
+            }
+            // 取面积较小的区域，拒绝率更低；按所用区域面积加权，拒绝后仍是均匀分布
+            float rectArea = (x1 - x0) * (z1 - z0);
+            float triangleArea = area(triangle);
+            triangles[size] = triangle;
+            rects[size * 4] = x0;
+            rects[size * 4 + 1] = z0;
+            rects[size * 4 + 2] = x1;
+            rects[size * 4 + 3] = z1;
+            inTriangle[size] = triangleArea < rectArea;
+            cumulative[size] = (size > 0 ? cumulative[size - 1] : 0) + Math.min(rectArea, triangleArea);
+            size++;
+        }
+
+        private boolean sample(Vector3 center, float radius, float minDistance, float maxHeightDiff, Vector3 out) {
+            Random random = ThreadLocalRandom.current();
+            double total = cumulative[size - 1];
+            float radiusSq = radius * radius;
+            float minDistanceSq = minDistance * minDistance;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                int i = search(cumulative, size, random.nextDouble() * total);
+                int triangle = triangles[i];
+                float x, z;
+                if (inTriangle[i]) {
+                    float sr1 = (float) Math.sqrt(random.nextFloat());
+                    float r2 = random.nextFloat();
+                    float k1 = 1 - sr1;
+                    float k2 = sr1 * (1 - r2);
+                    float k3 = sr1 * r2;
+                    int o = triangle * 9;
+                    x = k1 * coords[o] + k2 * coords[o + 3] + k3 * coords[o + 6];
+                    z = k1 * coords[o + 2] + k2 * coords[o + 5] + k3 * coords[o + 8];
+                } else {
+                    x = rects[i * 4] + random.nextFloat() * (rects[i * 4 + 2] - rects[i * 4]);
+                    z = rects[i * 4 + 1] + random.nextFloat() * (rects[i * 4 + 3] - rects[i * 4 + 1]);
+                }
+                float dx = x - center.x, dz = z - center.z;
+                float distanceSq = dx * dx + dz * dz;
+                if (distanceSq > radiusSq || distanceSq < minDistanceSq) {
+                    continue;
+                }
+                if (inTriangle[i]) {
+                    out.set(x, height(triangle, x, z), z);
+                } else if (!pointInTriangle(triangle, x, z, out)) {
+                    continue;
+                }
+                if (Math.abs(out.y - center.y) < maxHeightDiff) {
+                    return true;
+                }
+            }
+            // 随机取点都被拒绝，从随机位置开始依次取候选三角形与圆环交集中的确定点
+            int start = random.nextInt(size);
+            for (int k = 0; k < size; k++) {
+                int triangle = triangles[(start + k) % size];
+                if (!anchor(triangle, center.x, center.z, radius, minDistance, point)) {
+                    continue;
+                }
+                nudge(triangle, center.x, center.z, radiusSq, minDistanceSq, point);
+                float y = height(triangle, point[0], point[1]);
+                if (Math.abs(y - center.y) < maxHeightDiff) {
+                    out.set(point[0], y, point[1]);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
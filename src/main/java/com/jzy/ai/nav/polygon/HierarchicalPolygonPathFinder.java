@@ -0,0 +1,290 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.DefaultGraphPath;
+import com.jzy.ai.pfa.FlatAStarPathFinder;
+import com.jzy.ai.pfa.GraphPath;
+import com.jzy.ai.pfa.Heuristic;
+import com.jzy.ai.pfa.IntBinaryHeap;
+import com.jzy.ai.pfa.PathFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * 多边形分层寻路(HPA*)
+ * <p>
+ * 1、起点终点在同一区域，直接在区域内A*<br>
+ * 2、否则计算起点到所在区域入口、所在区域入口到终点的消耗，在 {@link PolygonRegionGraph} 的入口抽象图上A*<br>
+ * 3、按抽象路径逐段细化：跨区域的抽象边直接使用共享边，区域内的抽象边在区域内A*<br>
+ * <p>
+ * 只展开入口和路径经过的区域，长距离寻路展开节点远少于全图A*，结果略差于最优路径。
+ * 输出与 {@link com.jzy.ai.pfa.IndexedAStarPathFinder} 相同的连接路径，可继续用 {@link PolygonPointPath} 计算拐点。
+ * <p>
+ * 非线程安全，多线程需每个线程持有独立实例，抽象层可共享。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class HierarchicalPolygonPathFinder implements PathFinder<Polygon> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HierarchicalPolygonPathFinder.class);
+    private final PolygonRegionGraph regionGraph;
+    /**
+     * 区域内寻路
+     */
+    private final FlatAStarPathFinder<Polygon> regionPathFinder;
+    /**
+     * 区域内最短路径临时数据
+     */
+    private final float[] dist;
+    private final int[] distMarks;
+    private final IntBinaryHeap distHeap;
+    private int distMark;
+    /**
+     * 入口到终点的消耗，按入口编号
+     */
+    private final float[] goalCosts;
+    /**
+     * 抽象图搜索数据，按入口编号，最后两个为起点、终点
+     */
+    private final float[] costSoFar;
+    private final int[] parents;
+    /**
+     * 到达节点的共享边，区域内抽象边为null
+     */
+    private final Connection<Polygon>[] parentConnections;
+    private final int[] searchIds;
+    private final IntBinaryHeap openList;
+    private int searchId;
+    /**
+     * 抽象路径
+     */
+    private final int[] abstractPath;
+    /**
+     * 细化的路径片段
+     */
+    private final DefaultGraphPath<Connection<Polygon>> segment = new DefaultGraphPath<>();
+
+    @SuppressWarnings("unchecked")
+    public HierarchicalPolygonPathFinder(PolygonRegionGraph regionGraph) {
+        this.regionGraph = regionGraph;
+        this.regionPathFinder = new FlatAStarPathFinder<>(regionGraph);
+        int nodeCount = regionGraph.getNodeCount();
+        this.dist = new float[nodeCount];
+        this.distMarks = new int[nodeCount];
+        this.distHeap = new IntBinaryHeap(nodeCount);
+        int entranceCount = regionGraph.getEntranceCount();
+        this.goalCosts = new float[entranceCount];
+        int abstractCount = entranceCount + 2;
+        this.costSoFar = new float[abstractCount];
+        this.parents = new int[abstractCount];
+        this.parentConnections = (Connection<Polygon>[]) new Connection[abstractCount];
+        this.searchIds = new int[abstractCount];
+        this.openList = new IntBinaryHeap(abstractCount);
+        this.abstractPath = new int[abstractCount];
+    }
+
+    @Override
+    public boolean searchConnectionPath(Polygon startNode, Polygon endNode, Heuristic<Polygon> heuristic,
+                                        GraphPath<Connection<Polygon>> outPath) {
+        if (startNode == null) {
+            LOGGER.debug("起点坐标不在寻路层中");
+            return false;
+        }
+        if (endNode == null) {
+            LOGGER.debug("终点坐标不在寻路层中");
+            return false;
+        }
+        if (regionGraph.getRegion(startNode) == regionGraph.getRegion(endNode)) {
+            return regionPathFinder.searchConnectionPath(startNode, endNode, heuristic, outPath);
+        }
+
+        int count = searchAbstractPath(startNode, endNode, heuristic);
+        if (count < 0) {
+            return false;
+        }
+
+        // 逐段细化
+        int start = regionGraph.getEntranceCount();
+        int goal = start + 1;
+        for (int i = 1; i < count; i++) {
+            int node = abstractPath[i];
+            Connection<Polygon> connection = parentConnections[node];
+            if (connection != null) {
+                outPath.add(connection);
+                continue;
+            }
+            Polygon from = abstractNode(abstractPath[i - 1], startNode, endNode, start, goal);
+            Polygon to = abstractNode(node, startNode, endNode, start, goal);
+            segment.clear();
+            if (!regionPathFinder.searchConnectionPath(from, to, heuristic, segment)) {
+                // 区域连通，不应出现
+                LOGGER.warn("区域内路径细化失败 {}->{}", from.getIndex(), to.getIndex());
+                outPath.clear();
+                return false;
+            }
+            for (Connection<Polygon> c : segment) {
+                outPath.add(c);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean searchNodePath(Polygon startNode, Polygon endNode, Heuristic<Polygon> heuristic,
+                                  GraphPath<Polygon> outPath) {
+        DefaultGraphPath<Connection<Polygon>> connectionPath = new DefaultGraphPath<>();
+        if (!searchConnectionPath(startNode, endNode, heuristic, connectionPath)) {
+            return false;
+        }
+        outPath.add(startNode);
+        for (Connection<Polygon> connection : connectionPath) {
+            outPath.add(connection.getToNode());
+        }
+        return true;
+    }
+
+    /**
+     * 抽象图A*
+     *
+     * @param startNode
+     * @param endNode
+     * @param heuristic
+     * @return 抽象路径节点数，无路径返回-1
+     */
+    private int searchAbstractPath(Polygon startNode, Polygon endNode, Heuristic<Polygon> heuristic) {
+        int entranceCount = regionGraph.getEntranceCount();
+        int start = entranceCount;
+        int goal = entranceCount + 1;
+        int[] regionEntranceOffsets = regionGraph.getRegionEntranceOffsets();
+        int[] regionEntrances = regionGraph.getRegionEntrances();
+        int[] edgeOffsets = regionGraph.getEdgeOffsets();
+        int[] edgeTargets = regionGraph.getEdgeTargets();
+        float[] edgeCosts = regionGraph.getEdgeCosts();
+        Connection<Polygon>[] edgeConnections = regionGraph.getEdgeConnections();
+
+        // 终点区域入口到终点的消耗，共享边消耗对称，从终点反向搜索
+        int goalRegion = regionGraph.getRegion(endNode);
+        int goalMark = searchRegion(endNode);
+        for (int i = regionEntranceOffsets[goalRegion]; i < regionEntranceOffsets[goalRegion + 1]; i++) {
+            int entrance = regionEntrances[i];
+            int node = regionGraph.getEntranceNode(entrance);
+            goalCosts[entrance] = distMarks[node] == goalMark ? dist[node] : Float.NaN;
+        }
+
+        if (++searchId < 0) searchId = 1;
+        openList.clear();
+        searchIds[start] = searchId;
+        costSoFar[start] = 0;
+        parents[start] = -1;
+        parentConnections[start] = null;
+        openList.add(start, heuristic.estimate(startNode, endNode));
+
+        int startRegion = regionGraph.getRegion(startNode);
+        while (openList.size > 0) {
+            int current = openList.pop();
+            if (current == goal) {
+                return buildAbstractPath(goal);
+            }
+            float currentCost = costSoFar[current];
+            if (current == start) {
+                int startMark = searchRegion(startNode);
+                for (int i = regionEntranceOffsets[startRegion]; i < regionEntranceOffsets[startRegion + 1]; i++) {
+                    int entrance = regionEntrances[i];
+                    int node = regionGraph.getEntranceNode(entrance);
+                    if (distMarks[node] == startMark) {
+                        relax(current, entrance, dist[node], null, endNode, heuristic);
+                    }
+                }
+                continue;
+            }
+            for (int edge = edgeOffsets[current]; edge < edgeOffsets[current + 1]; edge++) {
+                relax(current, edgeTargets[edge], currentCost + edgeCosts[edge], edgeConnections[edge], endNode,
+                        heuristic);
+            }
+            if (regionGraph.getRegion(regionGraph.getEntrance(current)) == goalRegion
+                    && !Float.isNaN(goalCosts[current])) {
+                relax(current, goal, currentCost + goalCosts[current], null, endNode, heuristic);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 更新抽象节点消耗
+     *
+     * @param current
+     * @param node
+     * @param nodeCost
+     * @param connection
+     * @param endNode
+     * @param heuristic
+     */
+    private void relax(int current, int node, float nodeCost, Connection<Polygon> connection, Polygon endNode,
+                       Heuristic<Polygon> heuristic) {
+        float nodeHeuristic;
+        if (searchIds[node] != searchId) {
+            searchIds[node] = searchId;
+            nodeHeuristic = node < regionGraph.getEntranceCount()
+                    ? heuristic.estimate(regionGraph.getEntrance(node), endNode) : 0;
+        } else {
+            if (costSoFar[node] <= nodeCost) {
+                return;
+            }
+            nodeHeuristic = openList.getValue(node) - costSoFar[node];
+        }
+        costSoFar[node] = nodeCost;
+        parents[node] = current;
+        parentConnections[node] = connection;
+        openList.setValue(node, nodeCost + nodeHeuristic);
+    }
+
+    /**
+     * 回溯抽象路径，起点在前
+     *
+     * @param goal
+     * @return 节点数
+     */
+    private int buildAbstractPath(int goal) {
+        int count = 0;
+        for (int node = goal; node >= 0; node = parents[node]) {
+            abstractPath[count++] = node;
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int temp = abstractPath[i];
+            abstractPath[i] = abstractPath[j];
+            abstractPath[j] = temp;
+        }
+        return count;
+    }
+
+    /**
+     * 区域内最短路径
+     *
+     * @param polygon
+     * @return 本次标记
+     */
+    private int searchRegion(Polygon polygon) {
+        if (++distMark < 0) {
+            Arrays.fill(distMarks, 0);
+            distMark = 1;
+        }
+        regionGraph.searchRegion(polygon.getIndex(), dist, distMarks, distMark, distHeap);
+        return distMark;
+    }
+
+    private Polygon abstractNode(int node, Polygon startNode, Polygon endNode, int start, int goal) {
+        if (node == start) {
+            return startNode;
+        }
+        if (node == goal) {
+            return endNode;
+        }
+        return regionGraph.getEntrance(node);
+    }
+
+    public PolygonRegionGraph getRegionGraph() {
+        return regionGraph;
+    }
+}
@@ -256,6 +256,52 @@ public class Polygon implements Shape {
         return Intersector.isPointInPolygon(points, point);
     }
 
+    /**
+     * 多边形上离坐标点最近的点，忽略高度
+     *
+     * @param point
+     * @param out   输出，点在多边形内取多边形高度，在边上按边两端点插值高度
+     * @return 水平距离的平方，点在多边形内为0
+     */
+    public float getClosestPoint(Vector3 point, Vector3 out) {
+        if (isInnerPoint(point)) {
+            out.set(point.x, y, point.z);
+            return 0;
+        }
+        float minDistanceSq = Float.MAX_VALUE;
+        Vector3 closest = new Vector3();
+        int size = points.size();
+        for (int i = 0; i < size; i++) {
+            float distanceSq = getClosestPoint(points.get(i), points.get((i + 1) % size), point, closest);
+            if (distanceSq < minDistanceSq) {
+                minDistanceSq = distanceSq;
+                out.set(closest);
+            }
+        }
+        return minDistanceSq;
+    }
+
+    /**
+     * 线段a-b上离坐标点最近的点，忽略高度
+     *
+     * @param a
+     * @param b
+     * @param point
+     * @param out   输出，高度按线段两端点插值
+     * @return 水平距离的平方
+     */
+    static float getClosestPoint(Vector3 a, Vector3 b, Vector3 point, Vector3 out) {
+        float dx = b.x - a.x;
+        float dz = b.z - a.z;
+        float lengthSq = dx * dx + dz * dz;
+        float t = lengthSq == 0 ? 0 : ((point.x - a.x) * dx + (point.z - a.z) * dz) / lengthSq;
+        t = t < 0 ? 0 : (t > 1 ? 1 : t);
+        float x = a.x + dx * t;
+        float z = a.z + dz * t;
+        out.set(x, a.y + (b.y - a.y) * t, z);
+        return (point.x - x) * (point.x - x) + (point.z - z) * (point.z - z);
+    }
+
     /**
      * 是否包含另外一个多边形
      *
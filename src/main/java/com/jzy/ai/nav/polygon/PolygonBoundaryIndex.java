@@ -0,0 +1,175 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.nav.UniformGrid;
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphComponents;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多边形边界边网格索引，查询行走层外的坐标点最近的可行走点
+ * <p>
+ * 行走层外的点离行走层最近的点一定在边界边(无共享的边)上，只需索引边界边。
+ * 边界边按外包矩形放入均匀网格({@link UniformGrid})，查询从坐标点所在网格按圈向外搜索，
+ * 当前最近距离小于下一圈的最小距离时停止。
+ * <p>
+ * 构建后只读，可多线程共享。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class PolygonBoundaryIndex {
+    private final GraphComponents components;
+    /**
+     * 边界边端点及所属多边形
+     */
+    private final Vector3[] edgeStarts;
+    private final Vector3[] edgeEnds;
+    private final Polygon[] edgePolygons;
+    /**
+     * 边界边网格索引
+     */
+    private final UniformGrid grid;
+
+    /**
+     * @param polygons
+     * @param components 多边形连通区域
+     */
+    public PolygonBoundaryIndex(List<Polygon> polygons, GraphComponents components) {
+        this.components = components;
+        List<Vector3> starts = new ArrayList<>();
+        List<Vector3> ends = new ArrayList<>();
+        List<Polygon> owners = new ArrayList<>();
+        for (Polygon polygon : polygons) {
+            int size = polygon.points.size();
+            for (int i = 0; i < size; i++) {
+                Vector3 a = polygon.points.get(i);
+                Vector3 b = polygon.points.get((i + 1) % size);
+                if (isShared(polygon, a, b)) {
+                    continue;
+                }
+                starts.add(a);
+                ends.add(b);
+                owners.add(polygon);
+            }
+        }
+        int count = starts.size();
+        this.edgeStarts = starts.toArray(new Vector3[0]);
+        this.edgeEnds = ends.toArray(new Vector3[0]);
+        this.edgePolygons = owners.toArray(new Polygon[0]);
+        float[] bounds = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            Vector3 a = edgeStarts[i];
+            Vector3 b = edgeEnds[i];
+            bounds[i * 4] = Math.min(a.x, b.x);
+            bounds[i * 4 + 1] = Math.min(a.z, b.z);
+            bounds[i * 4 + 2] = Math.max(a.x, b.x);
+            bounds[i * 4 + 3] = Math.max(a.z, b.z);
+        }
+        this.grid = new UniformGrid(bounds);
+    }
+
+    /**
+     * 边是否为共享边
+     *
+     * @param polygon
+     * @param a
+     * @param b
+     * @return
+     */
+    private static boolean isShared(Polygon polygon, Vector3 a, Vector3 b) {
+        for (Connection<Polygon> connection : polygon.connections) {
+            PolygonEdge edge = (PolygonEdge) connection;
+            if ((samePoint(edge.rightVertex, a) && samePoint(edge.leftVertex, b))
+                    || (samePoint(edge.rightVertex, b) && samePoint(edge.leftVertex, a))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean samePoint(Vector3 a, Vector3 b) {
+        return a == b || (a.x == b.x && a.z == b.z);
+    }
+
+    /**
+     * 离坐标点最近的边界边上的点
+     *
+     * @param point
+     * @param maxDistance 最大搜索距离
+     * @param component   限定的连通区域，小于0不限定
+     * @param out         输出，最近点，高度按边两端点插值
+     * @return 边界边所属的多边形，范围内没有返回null
+     */
+    public Polygon findClosest(Vector3 point, float maxDistance, int component, Vector3 out) {
+        if (edgeStarts.length == 0) {
+            return null;
+        }
+        float cellSize = grid.getCellSize();
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        int[] cellOffsets = grid.getCellOffsets();
+        int[] cellEdges = grid.getCellItems();
+        float px = (point.x - grid.getMinX()) / cellSize;
+        float pz = (point.z - grid.getMinZ()) / cellSize;
+        if (Float.isNaN(px) || Float.isNaN(pz)) {
+            return null;
+        }
+        // 坐标点在网格外时先跳到网格边缘
+        int column = (int) Math.floor(px);
+        int row = (int) Math.floor(pz);
+        int outside = Math.max(Math.max(-column, column - columns + 1), Math.max(-row, row - rows + 1));
+        int startRing = Math.max(0, outside);
+        int maxRing = startRing + Math.max(columns, rows);
+        float maxDistanceSq = maxDistance == Float.MAX_VALUE ? Float.MAX_VALUE : maxDistance * maxDistance;
+        float bestSq = maxDistanceSq;
+        Polygon best = null;
+        Vector3 closest = new Vector3();
+        for (int ring = startRing; ring <= maxRing; ring++) {
+            // 第ring圈网格到坐标点的最小距离
+            float ringDistance = (ring - 1) * cellSize;
+            if (ring > 0 && ringDistance > 0 && ringDistance * ringDistance > bestSq) {
+                break;
+            }
+            // 只遍历网格内的列
+            int maxColumn = Math.min(columns - 1, column + ring);
+            for (int c = Math.max(0, column - ring); c <= maxColumn; c++) {
+                // 只遍历圈上的网格，首尾两列遍历网格内的行，中间列只有首尾两行
+                boolean side = c == column - ring || c == column + ring;
+                int step = side ? 1 : 2 * ring;
+                int maxRow = side ? Math.min(rows - 1, row + ring) : row + ring;
+                for (int r = side ? Math.max(0, row - ring) : row - ring; r <= maxRow; r += step) {
+                    if (r < 0 || r >= rows) {
+                        continue;
+                    }
+                    int cell = grid.cell(c, r);
+                    for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                        int edge = cellEdges[i];
+                        Polygon polygon = edgePolygons[edge];
+                        if (component >= 0 && components.getComponent(polygon.getIndex()) != component) {
+                            continue;
+                        }
+                        float distanceSq = Polygon.getClosestPoint(edgeStarts[edge], edgeEnds[edge], point, closest);
+                        if (distanceSq < bestSq || (best == null && distanceSq <= bestSq)) {
+                            bestSq = distanceSq;
+                            best = polygon;
+                            out.set(closest);
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 边界边个数
+     *
+     * @return
+     */
+    public int getEdgeCount() {
+        return edgeStarts.length;
+    }
+}
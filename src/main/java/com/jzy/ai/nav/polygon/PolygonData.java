@@ -1,8 +1,8 @@
 package com.jzy.ai.nav.polygon;
 
 import com.jzy.ai.nav.NavMeshData;
-import com.jzy.javalib.math.geometry.Vector3;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -19,9 +19,18 @@ public class PolygonData extends NavMeshData {
     private static final long serialVersionUID = 1L;
 
     /**
-     * 多边形顶点序号，
+     * 多边形顶点序号，按需由 {@link #polygonOffsets} {@link #polygonVertexIndexs} 生成，兼容旧接口
      */
-    private Map<Integer, Set<Integer>> pathPolygonIndexs;
+    private transient Map<Integer, Set<Integer>> pathPolygonIndexs;
+    /**
+     * 多边形顶点序号(CSR)，polygonVertexIndexs[polygonOffsets[p]..polygonOffsets[p+1]) 为多边形p的顶点序号，升序不重复
+     */
+    private int[] polygonOffsets;
+    private int[] polygonVertexIndexs;
+    /**
+     * 三角形所属的多边形序号，构建多边形索引时记录，生成随机点使用，不序列化
+     */
+    private transient int[] trianglePolygonIndexs;
 
     /**
      * <p>
@@ -38,10 +47,15 @@ public class PolygonData extends NavMeshData {
     @Override
     public void check(int scale) {
         scaleVector(pathVertices, scale);//地图坐标缩放计算
-        pathPolygonIndexs = buildUnityPolygonIndex(this.pathTriangles);
-        this.width = Math.abs(this.getEndX() - this.getStartX());
-        this.height = Math.abs(this.getEndZ() - this.getStartZ());
-        this.centerPsoition = new Vector3((endX - startX) / 2, (endZ - startZ) / 2);
+        buildUnityPolygonIndex(this.pathTriangles);
+        calculateBounds();
+    }
+
+    /**
+     * 从快照恢复的数据，顶点已缩放，多边形索引已构建，只计算宽高
+     */
+    void restore() {
+        calculateBounds();
     }
 
 
@@ -51,47 +65,183 @@ public class PolygonData extends NavMeshData {
      * Unity的NavMeshData有一些共边的三角形，共边的三角形其实不是连通关系，
      * 共边的三角形只是他们共同构成一个凸多边形，并且这种共边的三角形，全部都是扇形排列。
      * </p>
+     * 连续的三角形有共同顶点时合并为一个多边形，顶点用标记数组去重，结果存为CSR数组
      *
      * @param indexs
-     * @return
      */
-    private Map<Integer, Set<Integer>> buildUnityPolygonIndex(int[] indexs) {
-        Map<Integer, Set<Integer>> map = new TreeMap<>();
+    private void buildUnityPolygonIndex(int[] indexs) {
+        int triangleCount = indexs.length / 3;
+        trianglePolygonIndexs = new int[triangleCount];
+        Arrays.fill(trianglePolygonIndexs, -1);
+        int maxVertex = -1;
+        for (int index : indexs) {
+            maxVertex = Math.max(maxVertex, index);
+        }
+        // vertexMarks[v] == 多边形序号+1 表示顶点v已在当前多边形中
+        int[] vertexMarks = new int[maxVertex + 1];
+        int[] offsets = new int[triangleCount + 2];
+        int[] vertexIndexs = new int[indexs.length + 3];
+        int size = 0;
         int index = 0;
         for (int i = 0; i < indexs.length; ) {
-            Set<Integer> set = new TreeSet<>();
-            set.add(indexs[i]);
-            set.add(indexs[i + 1]);
-            set.add(indexs[i + 2]);
+            int mark = index + 1;
+            int start = size;
+            size = addVertex(indexs[i], mark, vertexMarks, vertexIndexs, size);
+            size = addVertex(indexs[i + 1], mark, vertexMarks, vertexIndexs, size);
+            size = addVertex(indexs[i + 2], mark, vertexMarks, vertexIndexs, size);
+            markTriangle(i / 3, index);
             int jIndex = i + 3;
             for (int j = jIndex; j < indexs.length; j += 3) {
-                if (set.contains(indexs[j]) || set.contains(indexs[j + 1]) || set.contains(indexs[j + 2])) {
-                    set.add(indexs[j]);
-                    set.add(indexs[j + 1]);
-                    set.add(indexs[j + 2]);
+                if (vertexMarks[indexs[j]] == mark || vertexMarks[indexs[j + 1]] == mark
+                        || vertexMarks[indexs[j + 2]] == mark) {
+                    size = addVertex(indexs[j], mark, vertexMarks, vertexIndexs, size);
+                    size = addVertex(indexs[j + 1], mark, vertexMarks, vertexIndexs, size);
+                    size = addVertex(indexs[j + 2], mark, vertexMarks, vertexIndexs, size);
+                    markTriangle(j / 3, index);
                     i += 3;
                 } else {
                     i += 3;
                     break;
                 }
             }
-            map.put(index++, set);
+            // 与TreeSet顺序一致
+            Arrays.sort(vertexIndexs, start, size);
+            offsets[++index] = size;
             if (jIndex == indexs.length) {
                 break;
             }
         }
+        polygonOffsets = Arrays.copyOf(offsets, index + 1);
+        polygonVertexIndexs = Arrays.copyOf(vertexIndexs, size);
+        pathPolygonIndexs = null;
+    }
 
-        return map;
+    private static int addVertex(int vertex, int mark, int[] vertexMarks, int[] vertexIndexs, int size) {
+        if (vertexMarks[vertex] != mark) {
+            vertexMarks[vertex] = mark;
+            vertexIndexs[size++] = vertex;
+        }
+        return size;
     }
 
+    /**
+     * 记录三角形所属多边形，最后一个三角形会再单独构成一个多边形，保留第一次的记录
+     *
+     * @param triangle
+     * @param polygonIndex
+     */
+    private void markTriangle(int triangle, int polygonIndex) {
+        if (trianglePolygonIndexs[triangle] < 0) {
+            trianglePolygonIndexs[triangle] = polygonIndex;
+        }
+    }
 
+
+    /**
+     * 多边形顶点序号，首次调用时由CSR数组生成
+     *
+     * @return
+     */
     public Map<Integer, Set<Integer>> getPathPolygonIndexs() {
+        if (pathPolygonIndexs == null && polygonOffsets != null) {
+            Map<Integer, Set<Integer>> map = new TreeMap<>();
+            for (int p = 0; p < getPolygonCount(); p++) {
+                Set<Integer> set = new TreeSet<>();
+                for (int i = polygonOffsets[p]; i < polygonOffsets[p + 1]; i++) {
+                    set.add(polygonVertexIndexs[i]);
+                }
+                map.put(p, set);
+            }
+            pathPolygonIndexs = map;
+        }
         return pathPolygonIndexs;
     }
 
 
+    /**
+     * 设置多边形顶点序号，key为多边形序号，需从0连续
+     *
+     * @param pathPolygonIndexs
+     * @throws IllegalArgumentException key不连续
+     */
     public void setPathPolygonIndexs(Map<Integer, Set<Integer>> pathPolygonIndexs) {
-        this.pathPolygonIndexs = pathPolygonIndexs;
+        int count = pathPolygonIndexs.size();
+        int[] offsets = new int[count + 1];
+        // 按key取值，不依赖Map的遍历顺序
+        for (int p = 0; p < count; p++) {
+            Set<Integer> set = pathPolygonIndexs.get(p);
+            if (set == null) {
+                throw new IllegalArgumentException("polygon index " + p + " missing, keys must be 0.." + (count - 1));
+            }
+            offsets[p + 1] = offsets[p] + set.size();
+        }
+        int[] vertexIndexs = new int[offsets[count]];
+        for (int p = 0; p < count; p++) {
+            int size = offsets[p];
+            for (Integer index : pathPolygonIndexs.get(p)) {
+                vertexIndexs[size++] = index;
+            }
+            Arrays.sort(vertexIndexs, offsets[p], size);
+        }
+        setPolygonIndexs(offsets, vertexIndexs);
+    }
+
+    /**
+     * 设置多边形顶点序号(CSR)
+     *
+     * @param polygonOffsets      多边形数+1个
+     * @param polygonVertexIndexs 每个多边形的顶点序号升序排列
+     */
+    void setPolygonIndexs(int[] polygonOffsets, int[] polygonVertexIndexs) {
+        this.polygonOffsets = polygonOffsets;
+        this.polygonVertexIndexs = polygonVertexIndexs;
+        this.pathPolygonIndexs = null;
+    }
+
+    /**
+     * 多边形个数
+     *
+     * @return
+     */
+    public int getPolygonCount() {
+        return polygonOffsets == null ? 0 : polygonOffsets.length - 1;
+    }
+
+    /**
+     * 多边形顶点序号偏移，多边形p的顶点序号为 {@link #getPolygonVertexIndexs()} [offsets[p], offsets[p+1])
+     *
+     * @return
+     */
+    public int[] getPolygonOffsets() {
+        return polygonOffsets;
+    }
+
+    /**
+     * 所有多边形的顶点序号，请勿修改
+     *
+     * @return
+     */
+    public int[] getPolygonVertexIndexs() {
+        return polygonVertexIndexs;
+    }
+
+    /**
+     * 多边形顶点序号
+     *
+     * @param polygon 多边形序号
+     * @return 新数组
+     */
+    public int[] getPolygonVertexIndexs(int polygon) {
+        return Arrays.copyOfRange(polygonVertexIndexs, polygonOffsets[polygon], polygonOffsets[polygon + 1]);
+    }
+
+    /**
+     * 三角形所属的多边形序号
+     *
+     * @return 从快照恢复的数据为null
+     */
+    int[] getTrianglePolygonIndexs() {
+        return trianglePolygonIndexs;
     }
 
 }
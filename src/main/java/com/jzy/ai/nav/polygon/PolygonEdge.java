@@ -36,13 +36,12 @@ public class PolygonEdge implements Connection<Polygon> {
         this.toNode = toNode;
         this.rightVertex = rightVertex;
         this.leftVertex = leftVertex;
+        // 构建时计算，避免多线程寻路时延迟写入
+        this.cost = fromNode.center.dst(toNode.center);
     }
 
     @Override
     public float getCost() {
-        if (cost == 0) {
-            cost = fromNode.center.dst(toNode.center);
-        }
         return cost;
     }
 
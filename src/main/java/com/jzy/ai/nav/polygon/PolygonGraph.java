@@ -2,15 +2,19 @@ package com.jzy.ai.nav.polygon;
 
 import com.jzy.ai.nav.triangle.Triangle;
 import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.CsrGraph;
+import com.jzy.ai.pfa.GraphComponents;
 import com.jzy.ai.pfa.IndexedGraph;
 import com.jzy.ai.quadtree.QuadTree;
+import com.jzy.ai.quadtree.polygon.FlatPolygonQuadTree;
 import com.jzy.ai.quadtree.polygon.PolygonGuadTree;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 
 /**
@@ -22,31 +26,98 @@ import java.util.Map.Entry;
 public class PolygonGraph implements IndexedGraph<Polygon> {
     private static final Logger LOGGER = LoggerFactory.getLogger(PolygonGraph.class);
     /**
-     * 缓存的随机点 x z
+     * 共享边顶点查找网格大小，需大于顶点比较精度
      */
-    private final Map<Integer, Map<Integer, List<Vector3>>> allRandomPointsInPath = new HashMap<>();
-    private final List<Vector3> allPoints = new ArrayList<>();
+    private static final float VERTEX_CELL_SIZE = 0.1f;
+    /**
+     * 多边形数达到该值时并行创建
+     */
+    private static final int PARALLEL_POLYGON_THRESHOLD = 2048;
+    /**
+     * 随机点生成方式
+     */
+    private final RandomPointMode randomPointMode;
+    /**
+     * 缓存的随机点网格，预生成模式使用
+     */
+    private RandomPointGrid randomPointGrid;
+    /**
+     * 随机点按需生成，按需生成模式使用
+     */
+    private AreaRandomPointSampler randomPointSampler;
     private List<Polygon> polygons = new ArrayList<>();
     private Map<Polygon, List<PolygonEdge>> sharedEdges;// 多边形共享边关联关系
-    private Set<IndexConnection> indexConnections = new HashSet<>();// 多边形共享边
+    private List<IndexConnection> indexConnections = new ArrayList<>();// 多边形共享边，按多边形序号排序
     /**
      * 坐标缩放倍数
      */
     private int scale;
     private PolygonData polygonData;
     /**
-     * 缓存多边形
+     * 缓存多边形，构建时使用，压平后释放，{@link #getQuadTree()} 按需重建
+     */
+    private volatile PolygonGuadTree quadTree;
+    /**
+     * 压平的多边形四叉树，定位坐标点使用
      */
-    private QuadTree<Vector3, Polygon> quadTree;
+    private FlatPolygonQuadTree flatQuadTree;
+    /**
+     * 加载后冻结的CSR图，寻路使用
+     */
+    private CsrGraph<Polygon> csrGraph;
+    /**
+     * 连通区域
+     */
+    private GraphComponents components;
+    /**
+     * 边界边索引，查询最近可行走点
+     */
+    private PolygonBoundaryIndex boundaryIndex;
 
     public PolygonGraph(PolygonData polygonData, int scale) {
+        this(polygonData, scale, RandomPointMode.BAKED);
+    }
+
+    /**
+     * @param polygonData
+     * @param scale           坐标缩放倍数
+     * @param randomPointMode 随机点生成方式
+     */
+    public PolygonGraph(PolygonData polygonData, int scale, RandomPointMode randomPointMode) {
         this.scale = scale;
         this.polygonData = polygonData;
+        this.randomPointMode = randomPointMode;
         this.polygonData.check(scale);
         initCalculate(polygonData, scale);
     }
 
-    private static Map<Polygon, List<PolygonEdge>> createSharedEdgesMap(Set<IndexConnection> indexConnections,
+    /**
+     * 从快照恢复，不再计算凸多边形、共享边和随机点
+     *
+     * @param polygonData 已缩放、已构建多边形索引的数据
+     * @param scale           坐标缩放倍数
+     * @param randomPointMode 随机点生成方式
+     * @param polygons        凸多边形，预生成模式已包含随机点
+     * @param connections     共享边，每4个一组：起点多边形位置、终点多边形位置、共享边顶点1序号、顶点2序号
+     */
+    PolygonGraph(PolygonData polygonData, int scale, RandomPointMode randomPointMode, List<Polygon> polygons,
+                 int[] connections) {
+        this.scale = scale;
+        this.polygonData = polygonData;
+        this.randomPointMode = randomPointMode;
+        quadTree = createQuadTree(polygonData, scale);
+        for (Polygon polygon : polygons) {
+            addPolygon(polygon);
+        }
+        Vector3[] vertices = polygonData.getPathVertices();
+        for (int i = 0; i < connections.length; i += 4) {
+            indexConnections.add(new IndexConnection(vertices[connections[i + 2]], vertices[connections[i + 3]],
+                    connections[i], connections[i + 1]));
+        }
+        initGraph();
+    }
+
+    private static Map<Polygon, List<PolygonEdge>> createSharedEdgesMap(List<IndexConnection> indexConnections,
                                                                         List<Polygon> polygons) {
 
         Map<Polygon, List<PolygonEdge>> connectionMap = new TreeMap<Polygon, List<PolygonEdge>>(
@@ -77,20 +148,38 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
      * @param scale
      */
     private void initCalculate(PolygonData polygonData, int scale) {
-        quadTree = new PolygonGuadTree(polygonData.getStartX() * scale, polygonData.getStartZ() * scale,
-                polygonData.getEndX() * scale, polygonData.getEndZ() * scale, (int) (polygonData.getWidth() / 50), 10);
+        quadTree = createQuadTree(polygonData, scale);
         createPolygons(polygonData, scale);// 创建多变形
-        createPathRandomPoint();// 生成多变形内的随机点
-        calculateIndexConnections(polygonData.getPathPolygonIndexs());// 计算共享边
+        if (randomPointMode == RandomPointMode.BAKED) {
+            createPathRandomPoint();// 生成多变形内的随机点
+        }
+        calculateIndexConnections(polygonData);// 计算共享边
+        initGraph();
+    }
+
+    private static PolygonGuadTree createQuadTree(PolygonData polygonData, int scale) {
+        return new PolygonGuadTree(polygonData.getStartX() * scale, polygonData.getStartZ() * scale,
+                polygonData.getEndX() * scale, polygonData.getEndZ() * scale, (int) (polygonData.getWidth() / 50), 10);
+    }
+
+    /**
+     * 由共享边构建寻路图
+     */
+    private void initGraph() {
         sharedEdges = createSharedEdgesMap(indexConnections, polygons);// 创建共享边对应关系
+        csrGraph = createCsrGraph();
+        components = GraphComponents.build(csrGraph);
+        boundaryIndex = new PolygonBoundaryIndex(polygons, components);
+        flatQuadTree = new FlatPolygonQuadTree(quadTree, polygons);
+        quadTree = null;
         initPathRandomPoint();
         LOGGER.debug("地图：{} 多边形个数：{} 共享边：{}", polygonData.getMapID(), polygons.size(), indexConnections.size());
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public List<Connection<Polygon>> getConnections(Polygon fromNode) {
-        return (List<Connection<Polygon>>) (List<?>) sharedEdges.get(fromNode);
+        // 与sharedEdges中的列表内容顺序一致，避免TreeMap查询
+        return fromNode.connections;
     }
 
     @Override
@@ -103,34 +192,41 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
         return sharedEdges.size();
     }
 
+    /**
+     * 创建CSR图，共享边顶点记录顶点序号
+     *
+     * @return
+     */
+    private CsrGraph<Polygon> createCsrGraph() {
+        Vector3[] vertices = polygonData.getPathVertices();
+        Map<Vector3, Integer> vertexIndexs = new IdentityHashMap<>(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            vertexIndexs.putIfAbsent(vertices[i], i);
+        }
+        return CsrGraph.build(this, polygons,
+                c -> vertexIndexs.getOrDefault(((PolygonEdge) c).rightVertex, -1),
+                c -> vertexIndexs.getOrDefault(((PolygonEdge) c).leftVertex, -1));
+    }
+
     /**
      * 计算共享边
      *
      * @note 两个多边形只存一个共享边
      */
-    private void calculateIndexConnections(Map<Integer, Set<Integer>> polygonVectorIndexs) {
-        int i = 0, j = 0, m = 0;
+    private void calculateIndexConnections(PolygonData polygonData) {
+        int i = 0, j = 0;
         Vector3[] edge = {null, null};
-        int[][] indices = new int[polygonVectorIndexs.size()][];
-
-        for (Entry<Integer, Set<Integer>> entry : polygonVectorIndexs.entrySet()) {
-            Set<Integer> value = entry.getValue();
-            indices[m] = new int[value.size()];
-            int n = 0;
-            for (Integer index : value) {
-                indices[m][n++] = index;
-            }
-            m++;
+        int[][] indices = new int[polygonData.getPolygonCount()][];
+        for (int m = 0; m < indices.length; m++) {
+            indices[m] = polygonData.getPolygonVertexIndexs(m);
         }
 
+        // 共享边至少有一个共同顶点，只比较顶点相近的多边形
+        int[][] candidates = createSharedVertexCandidates(indices);
         while (i < indices.length) {
             int[] polygonAIndex = indices[i];
-            j = 0;
-            while (j < indices.length) {
-                if (i == j) {
-                    j++;
-                    continue;
-                }
+            for (int c = 0; c < candidates[i].length; c++) {
+                j = candidates[i][c];
                 int[] polygonBIndex = indices[j];
                 if (hasSharedEdgeIndices(polygonAIndex, polygonBIndex, edge)) {
                     IndexConnection indexConnection1 = new IndexConnection(edge[0], edge[1], i, j);
@@ -142,12 +238,80 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
                     edge[0] = null;
                     edge[1] = null;
                 }
-                j++;
             }
             i++;
         }
     }
 
+    /**
+     * 查找有相近顶点的多边形
+     * <p>
+     * 顶点按 {@link #VERTEX_CELL_SIZE} 量化到网格，相邻网格内有顶点的多边形为候选，
+     * 网格大于顶点比较精度，候选包含所有可能有共享边的多边形
+     * </p>
+     *
+     * @param indices 多边形顶点序号
+     * @return 每个多边形的候选多边形，升序，不含自身
+     */
+    private int[][] createSharedVertexCandidates(int[][] indices) {
+        Vector3[] vertices = polygonData.getPathVertices();
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        for (int m = 0; m < indices.length; m++) {
+            for (int vertexIndex : indices[m]) {
+                Vector3 vertex = vertices[vertexIndex];
+                List<Integer> list = cells.computeIfAbsent(vertexCellKey(vertexCell(vertex.x), vertexCell(vertex.z)),
+                        k -> new ArrayList<>(4));
+                if (list.isEmpty() || list.get(list.size() - 1).intValue() != m) {
+                    list.add(m);
+                }
+            }
+        }
+
+        int[][] candidates = new int[indices.length][];
+        int[] marks = new int[indices.length];
+        Arrays.fill(marks, -1);
+        int[] buffer = new int[16];
+        for (int i = 0; i < indices.length; i++) {
+            int count = 0;
+            marks[i] = i;
+            for (int vertexIndex : indices[i]) {
+                Vector3 vertex = vertices[vertexIndex];
+                int cx = vertexCell(vertex.x);
+                int cz = vertexCell(vertex.z);
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        List<Integer> list = cells.get(vertexCellKey(cx + dx, cz + dz));
+                        if (list == null) {
+                            continue;
+                        }
+                        for (int n = 0; n < list.size(); n++) {
+                            int m = list.get(n);
+                            if (marks[m] != i) {
+                                marks[m] = i;
+                                if (count == buffer.length) {
+                                    buffer = Arrays.copyOf(buffer, count << 1);
+                                }
+                                buffer[count++] = m;
+                            }
+                        }
+                    }
+                }
+            }
+            candidates[i] = Arrays.copyOf(buffer, count);
+            // 与逐个比较的顺序一致
+            Arrays.sort(candidates[i]);
+        }
+        return candidates;
+    }
+
+    private static int vertexCell(float value) {
+        return (int) Math.floor(value / VERTEX_CELL_SIZE);
+    }
+
+    private static long vertexCellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
     /**
      * 多边形是否有共享边
      *
@@ -269,18 +433,22 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
      * @return
      */
     private List<Polygon> createPolygons(PolygonData polygonData, int scale) {
-        Set<Entry<Integer, Set<Integer>>> entrySet = polygonData.getPathPolygonIndexs().entrySet();
-        for (Entry<Integer, Set<Integer>> entry : entrySet) {
-            Integer key = entry.getKey();
-            Set<Integer> value = entry.getValue();
-            List<Vector3> points = new ArrayList<>();
-            int[] vectorIndexs = new int[value.size()];
-            int i = 0;
-            for (Integer index : value) {
-                points.add(polygonData.getPathVertices()[index]);
-                vectorIndexs[i++] = index;
+        Vector3[] vertices = polygonData.getPathVertices();
+        Polygon[] created = new Polygon[polygonData.getPolygonCount()];
+        IntStream range = IntStream.range(0, created.length);
+        // 多边形计算互不影响，数量多时并行创建，按序号顺序加入
+        if (created.length >= PARALLEL_POLYGON_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(index -> {
+            int[] vectorIndexs = polygonData.getPolygonVertexIndexs(index);
+            List<Vector3> points = new ArrayList<>(vectorIndexs.length);
+            for (int vertexIndex : vectorIndexs) {
+                points.add(vertices[vertexIndex]);
             }
-            Polygon polygon = new Polygon(key, points, vectorIndexs);
+            created[index] = new Polygon(index, points, vectorIndexs);
+        });
+        for (Polygon polygon : created) {
             if (!polygon.convex) {
                 LOGGER.debug("多边形{}不是凸多边形", polygon.toString());
                 continue;
@@ -299,38 +467,89 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
                 // });
             }
 
-            polygons.add(polygon);
-            try {
-                quadTree.set(polygon.center, polygon);
-            } catch (Exception e) {
-                LOGGER.error(String.format("地图%d 添加节点错误", polygonData.getMapID()), e);
-            }
-
+            addPolygon(polygon);
         }
 
         return polygons;
     }
 
+    /**
+     * 添加多边形到列表和四叉树
+     *
+     * @param polygon
+     */
+    private void addPolygon(Polygon polygon) {
+        polygons.add(polygon);
+        try {
+            quadTree.set(polygon.center, polygon);
+        } catch (Exception e) {
+            LOGGER.error(String.format("地图%d 添加节点错误", polygonData.getMapID()), e);
+        }
+    }
+
+    /**
+     * 导出共享边，快照使用
+     *
+     * @return 每4个一组：起点多边形位置、终点多边形位置、共享边顶点1序号、顶点2序号
+     */
+    int[] exportIndexConnections() {
+        Vector3[] vertices = polygonData.getPathVertices();
+        Map<Vector3, Integer> vertexIndexs = new IdentityHashMap<>(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            vertexIndexs.putIfAbsent(vertices[i], i);
+        }
+        int[] connections = new int[indexConnections.size() * 4];
+        int i = 0;
+        for (IndexConnection indexConnection : indexConnections) {
+            connections[i++] = indexConnection.fromPolygonIndex;
+            connections[i++] = indexConnection.toPolygonIndex;
+            connections[i++] = vertexIndexs.get(indexConnection.edgeVector1);
+            connections[i++] = vertexIndexs.get(indexConnection.edgeVector2);
+        }
+        return connections;
+    }
+
     /**
      * 创建多边形内的随机点 <br>
-     * 未找到合适方法，先生成三角形，三角形生成随机点，判断点是在哪个多边形内
+     * 三角形按构建多边形索引时记录的所属多边形分组，各多边形并行生成。
+     * 所属多边形不存在(非凸多边形被跳过)时，查找包含三角形中心点的多边形
      */
     public void createPathRandomPoint() {
         int[] indexs = polygonData.getPathTriangles();
         Vector3[] vertices = polygonData.getPathVertices();
+        int[] trianglePolygonIndexs = polygonData.getTrianglePolygonIndexs();
+        Polygon[] polygonByIndex = new Polygon[polygonData.getPolygonCount()];
+        for (Polygon polygon : polygons) {
+            polygonByIndex[polygon.getIndex()] = polygon;
+        }
+        Map<Polygon, List<Triangle>> polygonTriangles = new LinkedHashMap<>();
         for (int i = 0; i < indexs.length; ) {
+            int triangleIndex = i / 3;
             Triangle triangle = new Triangle(vertices[indexs[i++]], vertices[indexs[i++]], vertices[indexs[i++]], i);
-            int count = (int) (triangle.area() / (this.scale * 5)) + 1;
-            // TODO 分层问题？
-            Optional<Polygon> findAny = polygons.stream().filter(p -> p.isInnerPoint(triangle.center)).findAny();
-            if (!findAny.isPresent()) {
-                continue;
+            int polygonIndex = trianglePolygonIndexs == null ? -1 : trianglePolygonIndexs[triangleIndex];
+            Polygon polygon = polygonIndex < 0 ? null : polygonByIndex[polygonIndex];
+            if (polygon == null) {
+                // TODO 分层问题？
+                polygon = polygons.stream().filter(p -> p.isInnerPoint(triangle.center)).findFirst().orElse(null);
+                if (polygon == null) {
+                    continue;
+                }
             }
+            polygonTriangles.computeIfAbsent(polygon, k -> new ArrayList<>()).add(triangle);
+        }
 
-            for (int j = 0; j < count; j++) {
-                findAny.get().randomPoints.add(triangle.getRandomPoint(new Vector3()));
+        // 每个多边形只由一个线程写入
+        polygonTriangles.entrySet().parallelStream().forEach(entry -> {
+            List<Vector3> randomPoints = entry.getKey().randomPoints;
+            // MathUtil.random()为共享随机数，多线程竞争
+            Random random = ThreadLocalRandom.current();
+            for (Triangle triangle : entry.getValue()) {
+                int count = (int) (triangle.area() / (this.scale * 5)) + 1;
+                for (int j = 0; j < count; j++) {
+                    randomPoints.add(triangle.getRandomPoint(random, new Vector3()));
+                }
             }
-        }
+        });
     }
 
     /**
@@ -338,28 +557,17 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
      * 以空间换时间
      */
     public void initPathRandomPoint() {
-        int count = 0;
-        int x, z;
+        if (randomPointMode == RandomPointMode.ON_DEMAND) {
+            randomPointSampler = new AreaRandomPointSampler(polygonData.getPathTriangles(),
+                    polygonData.getPathVertices());
+            return;
+        }
+        List<Vector3> points = new ArrayList<>();
         for (Polygon polygon : getPolygons()) {
-            for (Vector3 point : polygon.randomPoints) {
-                x = (int) point.x;
-                z = (int) point.z;
-                Map<Integer, List<Vector3>> map = allRandomPointsInPath.get(x);
-                if (map == null) {
-                    map = new HashMap<>();
-                    allRandomPointsInPath.put(x, map);
-                }
-                List<Vector3> list = map.get(z);
-                if (list == null) {
-                    list = new ArrayList<>();
-                    map.put(z, list);
-                }
-                list.add(point);
-                allPoints.add(point);
-                count++;
-            }
+            points.addAll(polygon.randomPoints);
         }
-        LOGGER.debug("地图{}随机点{}", getPolygonData().getMapID(), count);
+        randomPointGrid = new RandomPointGrid(points);
+        LOGGER.debug("地图{}随机点{}", getPolygonData().getMapID(), points.size());
     }
 
     public PolygonData getPolygonData() {
@@ -370,16 +578,100 @@ public class PolygonGraph implements IndexedGraph<Polygon> {
         return polygons;
     }
 
-    public Map<Integer, Map<Integer, List<Vector3>>> getAllRandomPointsInPath() {
-        return allRandomPointsInPath;
+    public RandomPointMode getRandomPointMode() {
+        return randomPointMode;
+    }
+
+    /**
+     * 随机点网格，按需生成模式为null
+     *
+     * @return
+     */
+    public RandomPointGrid getRandomPointGrid() {
+        return randomPointGrid;
+    }
+
+    /**
+     * 随机点按需生成，预生成模式为null
+     *
+     * @return
+     */
+    public AreaRandomPointSampler getRandomPointSampler() {
+        return randomPointSampler;
+    }
+
+    /**
+     * 寻路使用的CSR图
+     *
+     * @return
+     */
+    public CsrGraph<Polygon> getCsrGraph() {
+        return csrGraph;
+    }
+
+    /**
+     * 多边形连通区域
+     *
+     * @return
+     */
+    public GraphComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * 两多边形是否连通
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public boolean isConnected(Polygon from, Polygon to) {
+        return components.isConnected(from.getIndex(), to.getIndex());
     }
 
+    /**
+     * 边界边索引
+     *
+     * @return
+     */
+    public PolygonBoundaryIndex getBoundaryIndex() {
+        return boundaryIndex;
+    }
+
+    /**
+     * 对象四叉树，加载后已释放，调用时按原顺序重新插入多边形重建 <br>
+     * 定位坐标点请使用 {@link #getFlatQuadTree()}
+     *
+     * @return
+     */
     public QuadTree<Vector3, Polygon> getQuadTree() {
-        return quadTree;
+        PolygonGuadTree tree = quadTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = quadTree;
+                if (tree == null) {
+                    tree = createQuadTree(polygonData, scale);
+                    for (Polygon polygon : polygons) {
+                        try {
+                            tree.set(polygon.center, polygon);
+                        } catch (Exception e) {
+                            LOGGER.error(String.format("地图%d 添加节点错误", polygonData.getMapID()), e);
+                        }
+                    }
+                    quadTree = tree;
+                }
+            }
+        }
+        return tree;
     }
 
-    public List<Vector3> getAllPoints() {
-        return allPoints;
+    /**
+     * 压平的多边形四叉树
+     *
+     * @return
+     */
+    public FlatPolygonQuadTree getFlatQuadTree() {
+        return flatQuadTree;
     }
 
     public int getScale() {
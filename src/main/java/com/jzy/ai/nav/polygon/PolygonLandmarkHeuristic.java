@@ -0,0 +1,384 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.CsrGraph;
+import com.jzy.ai.pfa.IntBinaryHeap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 地标(ALT)消耗计算
+ * <p>
+ * 预先选取K个地标多边形，计算每个地标到所有多边形的最短路径消耗，
+ * 由三角不等式 |d(L,n) - d(L,goal)| <= d(n,goal) 得到下界，与中心点直线距离取最大值。
+ * 有墙体和绕路的地图上比直线距离估算准确得多，A*展开节点更少，且保持可采纳(不高估)。
+ * <p>
+ * 共享边双向且消耗对称，地标到节点的消耗即节点到地标的消耗。构建后只读，可多线程共享。
+ * 预计算结果可通过 {@link #save(OutputStream)} 保存，按图签名校验后加载。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonLandmarkHeuristic extends PolygonHeuristic {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PolygonLandmarkHeuristic.class);
+    /**
+     * 文件标识
+     */
+    private static final int MAGIC = 0x4C4D4B31;
+    private static final int VERSION = 2;
+    /**
+     * 地标多边形序号
+     */
+    private final int[] landmarks;
+    /**
+     * 地标到多边形的最短路径消耗，不可达为 {@link Float#POSITIVE_INFINITY}
+     */
+    private final float[][] distances;
+    /**
+     * 图签名
+     */
+    private final long signature;
+    /**
+     * 构建时指定的地标个数，多边形较少时实际地标可能更少
+     */
+    private final int requestedCount;
+
+    private PolygonLandmarkHeuristic(int[] landmarks, float[][] distances, long signature, int requestedCount) {
+        this.landmarks = landmarks;
+        this.distances = distances;
+        this.signature = signature;
+        this.requestedCount = requestedCount;
+    }
+
+    /**
+     * 构建地标
+     * <p>
+     * 最远点选取：在最大的连通区域中依次选择离已有地标最远的多边形，其他连通区域间无路径，不分配地标
+     * </p>
+     *
+     * @param graph         多边形CSR图
+     * @param landmarkCount 地标个数
+     * @return
+     */
+    public static PolygonLandmarkHeuristic build(CsrGraph<Polygon> graph, int landmarkCount) {
+        int nodeCount = graph.getNodeCount();
+        int requestedCount = landmarkCount;
+        int first = largestComponentNode(graph);
+        if (first < 0 || landmarkCount <= 0) {
+            return new PolygonLandmarkHeuristic(new int[0], new float[0][], signature(graph), requestedCount);
+        }
+        landmarkCount = Math.min(landmarkCount, nodeCount);
+
+        IntBinaryHeap heap = new IntBinaryHeap(nodeCount);
+        // 离已选地标的最小消耗
+        float[] minDistances = new float[nodeCount];
+        Arrays.fill(minDistances, Float.POSITIVE_INFINITY);
+        // 首个地标取离起始多边形最远的点
+        float[] seed = new float[nodeCount];
+        dijkstra(graph, first, seed, heap);
+        int landmark = farthest(graph, seed, first);
+
+        int[] landmarks = new int[landmarkCount];
+        float[][] distances = new float[landmarkCount][];
+        int count = 0;
+        while (count < landmarkCount) {
+            float[] distance = new float[nodeCount];
+            dijkstra(graph, landmark, distance, heap);
+            landmarks[count] = landmark;
+            distances[count] = distance;
+            count++;
+            for (int i = 0; i < nodeCount; i++) {
+                minDistances[i] = Math.min(minDistances[i], distance[i]);
+            }
+            int next = farthest(graph, minDistances, -1);
+            if (next < 0 || minDistances[next] <= 0) {
+                break;
+            }
+            landmark = next;
+        }
+        if (count < landmarkCount) {
+            landmarks = Arrays.copyOf(landmarks, count);
+            distances = Arrays.copyOf(distances, count);
+        }
+        LOGGER.debug("地标个数：{} 多边形：{}", count, nodeCount);
+        return new PolygonLandmarkHeuristic(landmarks, distances, signature(graph), requestedCount);
+    }
+
+    /**
+     * 单源最短路径
+     *
+     * @param graph
+     * @param source
+     * @param distance 输出，不可达为无穷大
+     * @param heap
+     */
+    private static void dijkstra(CsrGraph<Polygon> graph, int source, float[] distance, IntBinaryHeap heap) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        float[] costs = graph.getCosts();
+        Arrays.fill(distance, Float.POSITIVE_INFINITY);
+        heap.clear();
+        distance[source] = 0;
+        heap.add(source, 0);
+        while (heap.size > 0) {
+            int node = heap.pop();
+            float cost = distance[node];
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                float targetCost = cost + costs[edge];
+                if (targetCost < distance[target]) {
+                    distance[target] = targetCost;
+                    heap.setValue(target, targetCost);
+                }
+            }
+        }
+    }
+
+    /**
+     * 最大连通区域中的任一多边形
+     *
+     * @param graph
+     * @return 无多边形返回-1
+     */
+    private static int largestComponentNode(CsrGraph<Polygon> graph) {
+        int nodeCount = graph.getNodeCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        boolean[] visited = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int best = -1;
+        int bestSize = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (visited[i] || graph.getNode(i) == null) {
+                continue;
+            }
+            int size = 0;
+            int top = 0;
+            stack[top++] = i;
+            visited[i] = true;
+            while (top > 0) {
+                int node = stack[--top];
+                size++;
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int target = targets[edge];
+                    if (!visited[target]) {
+                        visited[target] = true;
+                        stack[top++] = target;
+                    }
+                }
+            }
+            if (size > bestSize) {
+                bestSize = size;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 可达的消耗最大的多边形
+     *
+     * @param graph
+     * @param distance
+     * @param defaultIndex 全部为0时返回
+     * @return
+     */
+    private static int farthest(CsrGraph<Polygon> graph, float[] distance, int defaultIndex) {
+        int index = defaultIndex;
+        float max = 0;
+        for (int i = 0; i < distance.length; i++) {
+            if (distance[i] > max && distance[i] != Float.POSITIVE_INFINITY) {
+                max = distance[i];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public float estimate(Polygon node, Polygon endNode) {
+        float estimate = super.estimate(node, endNode);
+        int from = node.getIndex();
+        int to = endNode.getIndex();
+        for (float[] distance : distances) {
+            float a = distance[from];
+            float b = distance[to];
+            // 一方不可达时无法得到下界
+            if (a == Float.POSITIVE_INFINITY || b == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            float d = a > b ? a - b : b - a;
+            if (d > estimate) {
+                estimate = d;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * 图签名，节点数、边和消耗变化后失效
+     *
+     * @param graph
+     * @return
+     */
+    public static long signature(CsrGraph<Polygon> graph) {
+        CRC32 crc = new CRC32();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        float[] costs = graph.getCosts();
+        updateInt(crc, graph.getNodeCount());
+        for (int offset : offsets) {
+            updateInt(crc, offset);
+        }
+        for (int i = 0; i < graph.getEdgeCount(); i++) {
+            updateInt(crc, targets[i]);
+            updateInt(crc, Float.floatToIntBits(costs[i]));
+        }
+        return ((long) graph.getNodeCount() << 32) ^ crc.getValue();
+    }
+
+    private static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * 保存预计算数据
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void save(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeLong(signature);
+        dos.writeInt(requestedCount);
+        dos.writeInt(landmarks.length);
+        int nodeCount = distances.length > 0 ? distances[0].length : 0;
+        dos.writeInt(nodeCount);
+        for (int i = 0; i < landmarks.length; i++) {
+            dos.writeInt(landmarks[i]);
+            for (float d : distances[i]) {
+                dos.writeFloat(d);
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * 加载预计算数据
+     *
+     * @param in
+     * @param graph 校验签名的图
+     * @return
+     * @throws IOException 格式错误，或地图数据已变化
+     */
+    public static PolygonLandmarkHeuristic load(InputStream in, CsrGraph<Polygon> graph) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("not a landmark heuristic file");
+        }
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported landmark heuristic version " + version);
+        }
+        long signature = dis.readLong();
+        if (signature != signature(graph)) {
+            throw new IOException("landmark heuristic does not match graph");
+        }
+        int requestedCount = dis.readInt();
+        int landmarkCount = dis.readInt();
+        int nodeCount = dis.readInt();
+        if (landmarkCount > 0 && nodeCount != graph.getNodeCount()) {
+            throw new IOException("landmark node count " + nodeCount + " != " + graph.getNodeCount());
+        }
+        int[] landmarks = new int[landmarkCount];
+        float[][] distances = new float[landmarkCount][nodeCount];
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarks[i] = dis.readInt();
+            for (int j = 0; j < nodeCount; j++) {
+                distances[i][j] = dis.readFloat();
+            }
+        }
+        return new PolygonLandmarkHeuristic(landmarks, distances, signature, requestedCount);
+    }
+
+    /**
+     * 从文件加载，文件不存在、与地图不匹配或地标个数不同时重新构建并保存
+     * <p>
+     * 先写入临时文件再原子替换，其他进程不会读到写了一半的文件
+     * </p>
+     *
+     * @param file
+     * @param graph
+     * @param landmarkCount
+     * @return
+     */
+    public static PolygonLandmarkHeuristic loadOrBuild(Path file, CsrGraph<Polygon> graph, int landmarkCount) {
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                PolygonLandmarkHeuristic heuristic = load(in, graph);
+                if (heuristic.requestedCount == landmarkCount) {
+                    return heuristic;
+                }
+                LOGGER.info("地标数据{}地标个数{}与{}不同，重新计算", file, heuristic.requestedCount, landmarkCount);
+            } catch (IOException e) {
+                LOGGER.warn("地标数据{}失效，重新计算：{}", file, e.getMessage());
+            }
+        }
+        PolygonLandmarkHeuristic heuristic = build(graph, landmarkCount);
+        try {
+            write(file, heuristic);
+        } catch (IOException e) {
+            LOGGER.error("保存地标数据" + file, e);
+        }
+        return heuristic;
+    }
+
+    /**
+     * 写入文件，先写临时文件再原子替换
+     *
+     * @param file
+     * @param heuristic
+     * @throws IOException
+     */
+    private static void write(Path file, PolygonLandmarkHeuristic heuristic) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            heuristic.save(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    /**
+     * 地标多边形序号
+     *
+     * @return
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+}
@@ -2,14 +2,21 @@ package com.jzy.ai.nav.polygon;
 
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMesh;
-import com.jzy.ai.pfa.IndexedAStarPathFinder;
-import com.jzy.javalib.base.util.MathUtil;
+import com.jzy.ai.nav.NavMeshRaycastHit;
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphPath;
+import com.jzy.ai.pfa.PathFinder;
+import com.jzy.ai.pfa.PathFinderQueue;
+import com.jzy.ai.pfa.PathFinderRequest;
+import com.jzy.ai.pfa.PathFinderType;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.Map.Entry;
 //import com.game.model.enums.ConstantConfig;
 
 /**
@@ -37,9 +44,82 @@ public final class PolygonNavMesh extends NavMesh {
      * 高度验证精度
      */
     private static final int HIGH_PRECISION = 6;
+    /**
+     * 从提示多边形出发定位坐标点时，最多穿过的共享边数
+     */
+    private static final int LOCATE_MAX_STEPS = 8;
+    /**
+     * 按需生成模式获取多个随机点的个数
+     */
+    private static final int ON_DEMAND_RANDOM_POINTS = 32;
+    /**
+     * 射线检测的多边形顶点访问
+     */
+    private static final RaycastCells<Polygon> POLYGON_CELLS = new RaycastCells<Polygon>() {
+        @Override
+        public int getVertexCount(Polygon cell) {
+            return cell.points.size();
+        }
+
+        @Override
+        public Vector3 getVertex(Polygon cell, int i) {
+            return cell.points.get(i);
+        }
+
+        @Override
+        public boolean isInnerPoint(Polygon cell, Vector3 point) {
+            return cell.isInnerPoint(point);
+        }
+
+        @Override
+        public float getY(Polygon cell) {
+            return cell.y;
+        }
+
+        @Override
+        public Vector3 getPortalRight(Connection<Polygon> connection) {
+            return ((PolygonEdge) connection).rightVertex;
+        }
+
+        @Override
+        public Vector3 getPortalLeft(Connection<Polygon> connection) {
+            return ((PolygonEdge) connection).leftVertex;
+        }
+    };
     private final PolygonGraph graph;
-    private final PolygonHeuristic heuristic;// 计算寻路消耗
-    private final IndexedAStarPathFinder<Polygon> pathFinder;
+    private volatile PolygonHeuristic heuristic;// 计算寻路消耗
+    /**
+     * 寻路引擎
+     */
+    private final PathFinderType pathFinderType;
+    /**
+     * 分层寻路抽象层，未开启为null
+     */
+    private final PolygonRegionGraph regionGraph;
+    /**
+     * 共享寻路器，非并发模式下使用，查询需加锁
+     */
+    private final PathFinder<Polygon> pathFinder;
+    /**
+     * 并发模式下每个线程独享的寻路器，图数据只读共享
+     */
+    private final ThreadLocal<PathFinder<Polygon>> localPathFinder;
+    /**
+     * 并发模式下每个线程独享的临时多边形路径
+     */
+    private final ThreadLocal<PolygonGraphPath> localGraphPath;
+    /**
+     * 终点与起点不连通时，是否改为起点连通区域内离终点最近的点
+     */
+    private volatile boolean redirectUnreachable;
+    /**
+     * 多边形路径缓存，未开启为null
+     */
+    private volatile PolygonPathCache pathCache;
+    /**
+     * 起点终点不在行走层时，修正到该距离内最近的可行走点，0不修正
+     */
+    private volatile float snapDistance;
 
     public PolygonNavMesh(String navMeshStr) {
         this(navMeshStr, 1);
@@ -50,13 +130,216 @@ public final class PolygonNavMesh extends NavMesh {
      * @param scale      放大倍数
      */
     public PolygonNavMesh(String navMeshStr, int scale) {
-        graph = new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale);
-        pathFinder = new IndexedAStarPathFinder<Polygon>(graph);
+        this(navMeshStr, scale, false);
+    }
+
+    /**
+     * @param navMeshStr 导航网格数据
+     * @param scale      放大倍数
+     * @param concurrent 并发查询模式，true 每个线程持有独立的搜索状态(节点记录、开列表、临时路径)，寻路不再串行加锁
+     */
+    public PolygonNavMesh(String navMeshStr, int scale, boolean concurrent) {
+        this(navMeshStr, scale, PathFinderType.INDEXED_A_STAR, concurrent);
+    }
+
+    /**
+     * @param navMeshStr     导航网格数据
+     * @param scale          放大倍数
+     * @param pathFinderType 寻路引擎
+     * @param concurrent     并发查询模式
+     */
+    public PolygonNavMesh(String navMeshStr, int scale, PathFinderType pathFinderType, boolean concurrent) {
+        this(navMeshStr, scale, pathFinderType, 0, concurrent);
+    }
+
+    /**
+     * @param navMeshStr     导航网格数据
+     * @param scale          放大倍数
+     * @param pathFinderType 寻路引擎，开启分层寻路时只用于分帧寻路队列
+     * @param regionSize     分层寻路区域边长，大于0开启分层寻路(HPA*)，大地图长距离寻路展开节点更少，路径略差于最优
+     * @param concurrent     并发查询模式
+     */
+    public PolygonNavMesh(String navMeshStr, int scale, PathFinderType pathFinderType, float regionSize,
+                          boolean concurrent) {
+        this(new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale), pathFinderType, regionSize,
+                concurrent);
+    }
+
+    /**
+     * @param graph          已构建的寻路图，如从快照加载 {@link PolygonNavMeshSnapshot}
+     * @param pathFinderType 寻路引擎
+     * @param regionSize     分层寻路区域边长，大于0开启分层寻路
+     * @param concurrent     并发查询模式
+     */
+    public PolygonNavMesh(PolygonGraph graph, PathFinderType pathFinderType, float regionSize, boolean concurrent) {
+        this.graph = graph;
         heuristic = new PolygonHeuristic();
+        this.pathFinderType = pathFinderType;
+        regionGraph = regionSize > 0 ? new PolygonRegionGraph(graph.getCsrGraph(), regionSize) : null;
+        if (concurrent) {
+            pathFinder = null;
+            localPathFinder = ThreadLocal.withInitial(this::createPathFinder);
+            localGraphPath = ThreadLocal.withInitial(PolygonGraphPath::new);
+        } else {
+            pathFinder = createPathFinder();
+            localPathFinder = null;
+            localGraphPath = null;
+        }
+    }
+
+    /**
+     * 优先从快照加载，快照不存在、损坏或与数据不匹配时解析数据构建并重新生成快照
+     *
+     * @param snapshot       快照文件
+     * @param navMeshStr     导航网格数据，用于校验快照
+     * @param scale          放大倍数
+     * @param pathFinderType 寻路引擎
+     * @param regionSize     分层寻路区域边长，大于0开启分层寻路
+     * @param concurrent     并发查询模式
+     * @return
+     */
+    public static PolygonNavMesh loadSnapshot(Path snapshot, String navMeshStr, int scale,
+                                              PathFinderType pathFinderType, float regionSize, boolean concurrent) {
+        long checksum = PolygonNavMeshSnapshot.checksum(navMeshStr, scale);
+        PolygonGraph graph = null;
+        if (Files.exists(snapshot)) {
+            try {
+                graph = PolygonNavMeshSnapshot.read(snapshot, checksum);
+            } catch (IOException e) {
+                LOGGER.warn("导航网格快照{}失效，重新构建：{}", snapshot, e.getMessage());
+            }
+        }
+        if (graph == null) {
+            graph = new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale);
+            try {
+                PolygonNavMeshSnapshot.write(graph, checksum, snapshot);
+            } catch (IOException e) {
+                LOGGER.error("保存导航网格快照" + snapshot, e);
+            }
+        }
+        return new PolygonNavMesh(graph, pathFinderType, regionSize, concurrent);
+    }
+
+    /**
+     * 创建寻路器
+     *
+     * @return
+     */
+    private PathFinder<Polygon> createPathFinder() {
+        if (regionGraph != null) {
+            return new HierarchicalPolygonPathFinder(regionGraph);
+        }
+        return pathFinderType.create(graph.getCsrGraph());
+    }
+
+    /**
+     * 是否为并发查询模式
+     *
+     * @return
+     */
+    public boolean isConcurrent() {
+        return localPathFinder != null;
+    }
+
+    /**
+     * A*查询多边形路径
+     * <p>
+     * 并发模式使用线程独享的寻路器，否则锁住共享寻路器；不连通的多边形直接返回失败；开启缓存时优先使用缓存的多边形通道
+     * </p>
+     *
+     * @param fromPolygon
+     * @param toPolygon
+     * @param path
+     * @return
+     */
+    private boolean searchPolygonPath(Polygon fromPolygon, Polygon toPolygon, PolygonGraphPath path) {
+        // 不连通直接返回，避免遍历整个可达区域
+        if (fromPolygon != null && toPolygon != null && !graph.isConnected(fromPolygon, toPolygon)) {
+            LOGGER.debug("地图{}多边形{}和{}不连通", getMapId(), fromPolygon.getIndex(), toPolygon.getIndex());
+            return false;
+        }
+        PolygonPathCache cache = pathCache;
+        if (cache != null && fromPolygon != null && toPolygon != null && cache.get(fromPolygon, toPolygon, path)) {
+            return true;
+        }
+        boolean found;
+        if (localPathFinder != null) {
+            found = localPathFinder.get().searchConnectionPath(fromPolygon, toPolygon, heuristic, path);
+        } else {
+            synchronized (pathFinder) {
+                found = pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, path);
+            }
+        }
+        if (found && cache != null) {
+            cache.put(fromPolygon, toPolygon, path);
+        }
+        return found;
+    }
+
+    /**
+     * 获取临时多边形路径，并发模式下线程复用
+     *
+     * @return
+     */
+    private PolygonGraphPath obtainGraphPath() {
+        if (localGraphPath != null) {
+            PolygonGraphPath path = localGraphPath.get();
+            path.clear();
+            return path;
+        }
+        return new PolygonGraphPath();
+    }
+
+    /**
+     * 创建分帧寻路队列
+     * <p>
+     * 队列持有独立的寻路器，与同步查询互不影响，需在同一逻辑线程中提交和执行
+     * </p>
+     *
+     * @return
+     */
+    public PathFinderQueue<Polygon> createPathFinderQueue() {
+        return new PathFinderQueue<>(pathFinderType.create(graph.getCsrGraph()));
+    }
+
+    /**
+     * 创建分帧寻路请求
+     * <p>
+     * 结果路径为 {@link PolygonGraphPath}，找到路径后可用 {@link PolygonPointPath} 计算拐点；
+     * 起点或终点不在行走层时请求直接失败
+     * </p>
+     *
+     * @param fromPoint
+     * @param toPoint
+     * @param callback  完成回调，可为null
+     * @return
+     */
+    public PathFinderRequest<Polygon> createPathRequest(Vector3 fromPoint, Vector3 toPoint,
+                                                       PathFinderRequest.Callback<Polygon> callback) {
+        Polygon fromPolygon = getPolygon(fromPoint);
+        Polygon toPolygon;
+        if (fromPolygon != null && fromPolygon.isInnerPoint(toPoint)) {
+            toPolygon = fromPolygon;
+        } else {
+            toPolygon = getPolygon(toPoint);
+        }
+        // 不连通的请求直接失败
+        if (fromPolygon != null && toPolygon != null && !graph.isConnected(fromPolygon, toPolygon)) {
+            toPolygon = null;
+        }
+        PolygonGraphPath path = new PolygonGraphPath();
+        path.start = new Vector3(fromPoint);
+        path.end = new Vector3(toPoint);
+        path.startPolygon = fromPolygon;
+        return new PathFinderRequest<>(fromPolygon, toPolygon, heuristic, path, callback);
     }
 
     /**
      * 查询路径
+     * <p>
+     * 开启 {@link #setRedirectUnreachable(boolean)} 时，终点不连通则寻路到起点连通区域内离终点最近的点，path.end为实际终点；
+     * 设置 {@link #setSnapDistance(float)} 时，不在行走层的起点终点修正到最近的可行走点，path.start、path.end为修正后的坐标
+     * </p>
      *
      * @param fromPoint
      * @param toPoint
@@ -64,29 +347,92 @@ public final class PolygonNavMesh extends NavMesh {
      */
     public boolean findPath(Vector3 fromPoint, Vector3 toPoint, PolygonGraphPath path) {
         path.clear();
+        float snap = snapDistance;
         Polygon fromPolygon = getPolygon(fromPoint);
+        if (fromPolygon == null && snap > 0) {
+            Vector3 snapped = new Vector3();
+            fromPolygon = getClosestPolygon(fromPoint, snap, snapped);
+            if (fromPolygon != null) {
+                fromPoint = snapped;
+            }
+        }
         Polygon toPolygon;
         // 起点终点在同一个多边形中
         if (fromPolygon != null && fromPolygon.isInnerPoint(toPoint)) {
             toPolygon = fromPolygon;
         } else {
             toPolygon = getPolygon(toPoint);
+            if (toPolygon == null && snap > 0) {
+                Vector3 snapped = new Vector3();
+                toPolygon = getClosestPolygon(toPoint, snap, snapped);
+                if (toPolygon != null) {
+                    toPoint = snapped;
+                }
+            }
             if (toPolygon == null) {
                 LOGGER.warn("点{}不在地图{}行走层", toPoint.toString(), getMapId());
                 return false;
             }
         }
-        synchronized (pathFinder) {
-            if (pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, path)) {
+        Vector3 endPoint = toPoint;
+        if (redirectUnreachable && fromPolygon != null && !graph.isConnected(fromPolygon, toPolygon)) {
+            endPoint = new Vector3();
+            toPolygon = getNearestPolygon(toPoint, graph.getComponents().getComponent(fromPolygon.getIndex()), endPoint);
+            if (toPolygon == null) {
+                return false;
+            }
+        }
+        // 直线可达，直接使用射线经过的多边形，不再A*
+        if (fromPolygon != null && fromPolygon != toPolygon && endPoint == toPoint) {
+            if (!raycast(fromPolygon, fromPoint, toPoint, null, path) && path.getEndPolygon() == toPolygon) {
                 path.start = new Vector3(fromPoint);
-                path.end = new Vector3(toPoint);
+                path.end = new Vector3(endPoint);
                 path.startPolygon = fromPolygon;
                 return true;
             }
+            path.clear();
+        }
+        if (searchPolygonPath(fromPolygon, toPolygon, path)) {
+            path.start = new Vector3(fromPoint);
+            path.end = new Vector3(endPoint);
+            path.startPolygon = fromPolygon;
+            return true;
         }
         return false;
     }
 
+    /**
+     * 射线检测，沿直线穿过共享边，碰到边界边停止
+     * <p>
+     * 可用于校验客户端上报的移动，或判断两点间是否可直线行走
+     * </p>
+     *
+     * @param from
+     * @param to
+     * @param hit  输出结果，可为null
+     * @return true 碰到边界，不能直线到达
+     */
+    @Override
+    public boolean raycast(Vector3 from, Vector3 to, NavMeshRaycastHit hit) {
+        return raycast(getPolygon(from), from, to, hit, null);
+    }
+
+    /**
+     * 射线检测
+     *
+     * @param start    起点所在多边形
+     * @param from
+     * @param to
+     * @param hit      输出结果，可为null
+     * @param corridor 输出，射线经过的共享边，可为null
+     * @return true 碰到边界
+     */
+    private boolean raycast(Polygon start, Vector3 from, Vector3 to, NavMeshRaycastHit hit,
+                            GraphPath<Connection<Polygon>> corridor) {
+        return raycast(graph.getCsrGraph(), graph.getPolygonData().getPathVertices(), POLYGON_CELLS, start, from, to, hit,
+                corridor);
+    }
+
     /**
      * 查询路径
      * <p>
@@ -99,7 +445,7 @@ public final class PolygonNavMesh extends NavMesh {
      * @return
      */
     public List<Vector3> findPath(Vector3 fromPoint, Vector3 toPoint, PolygonPointPath pointPath) {
-        PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
+        PolygonGraphPath polygonGraphPath = obtainGraphPath();
         boolean find = findPath(fromPoint, toPoint, polygonGraphPath);
         if (!find) {
             return pointPath.getVectors();
@@ -128,15 +474,13 @@ public final class PolygonNavMesh extends NavMesh {
             return list;
         }
         PolygonPointPath pointPath = new PolygonPointPath();
-        PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
-        synchronized (pathFinder) {
-            if (pathFinder.searchConnectionPath(fromPolygon, toPolygon, heuristic, polygonGraphPath)) {
-                polygonGraphPath.start = fromPoint;
-                polygonGraphPath.end = toPoint;
-                polygonGraphPath.startPolygon = fromPolygon;
-            } else {
-                return pointPath.getVectors();
-            }
+        PolygonGraphPath polygonGraphPath = obtainGraphPath();
+        if (searchPolygonPath(fromPolygon, toPolygon, polygonGraphPath)) {
+            polygonGraphPath.start = fromPoint;
+            polygonGraphPath.end = toPoint;
+            polygonGraphPath.startPolygon = fromPolygon;
+        } else {
+            return pointPath.getVectors();
         }
         // 计算坐标点
         pointPath.calculateForGraphPath(polygonGraphPath, false);
@@ -153,7 +497,7 @@ public final class PolygonNavMesh extends NavMesh {
      * @return
      */
     public List<Vector3> find3DPath(Vector3 fromPoint, Vector3 toPoint, PolygonPointPath pointPath) {
-        PolygonGraphPath polygonGraphPath = new PolygonGraphPath();
+        PolygonGraphPath polygonGraphPath = obtainGraphPath();
         boolean find = findPath(fromPoint, toPoint, polygonGraphPath);
         if (!find) {
             return pointPath.getVectors();
@@ -208,11 +552,90 @@ public final class PolygonNavMesh extends NavMesh {
         //
         // return null;
 
-        Polygon polygon = graph.getQuadTree().get(point, null);
+        Polygon polygon = graph.getFlatQuadTree().get(point, null);
 
         return polygon;
     }
 
+    /**
+     * 从提示多边形出发查找坐标点所在的多边形
+     * <p>
+     * 移动中的对象大多仍在上一帧的多边形或相邻多边形内：先检测提示多边形，
+     * 再沿中心点到坐标点方向穿过共享边向坐标点走，超过步数或走到边界再查询四叉树。
+     * 沿共享边行走，分层重叠的地图上保持在对象所在的层
+     * </p>
+     *
+     * @param point
+     * @param hint  上次所在的多边形，null直接查询四叉树
+     * @return
+     */
+    public Polygon getPolygon(Vector3 point, Polygon hint) {
+        Polygon current = hint;
+        Polygon previous = null;
+        for (int step = 0; current != null && step <= LOCATE_MAX_STEPS; step++) {
+            if (current.isInnerPoint(point)) {
+                return current;
+            }
+            Polygon next = null;
+            for (Connection<Polygon> connection : current.connections) {
+                PolygonEdge edge = (PolygonEdge) connection;
+                if (edge.toNode == previous) {
+                    continue;
+                }
+                // 中心点和坐标点在共享边两侧
+                float centerSide = Vector3.cross2D(edge.rightVertex, edge.leftVertex, current.center);
+                float pointSide = Vector3.cross2D(edge.rightVertex, edge.leftVertex, point);
+                if ((centerSide > 0 && pointSide < 0) || (centerSide < 0 && pointSide > 0)) {
+                    next = edge.toNode;
+                    break;
+                }
+            }
+            previous = current;
+            current = next;
+        }
+        return getPolygon(point);
+    }
+
+    /**
+     * 离坐标点最近的可行走点
+     * <p>
+     * 坐标点在行走层内直接返回所在多边形，否则通过边界边索引查找最近的边界点
+     * </p>
+     *
+     * @param point
+     * @param maxDistance 最大搜索距离
+     * @param out         输出，最近的可行走点
+     * @return 范围内没有可行走点返回null
+     */
+    public Polygon getClosestPolygon(Vector3 point, float maxDistance, Vector3 out) {
+        Polygon polygon = getPolygon(point);
+        if (polygon != null) {
+            out.set(point.x, polygon.y, point.z);
+            return polygon;
+        }
+        return graph.getBoundaryIndex().findClosest(point, maxDistance, -1, out);
+    }
+
+    /**
+     * 连通区域内离坐标点最近的多边形
+     * <p>
+     * 坐标点不在区域内时通过边界边索引查找，用于不可达终点的修正
+     * </p>
+     *
+     * @param point
+     * @param component 连通区域编号
+     * @param out       输出，多边形上离坐标点最近的点
+     * @return 区域无多边形返回null
+     */
+    public Polygon getNearestPolygon(Vector3 point, int component, Vector3 out) {
+        Polygon polygon = getPolygon(point);
+        if (polygon != null && graph.getComponents().getComponent(polygon.getIndex()) == component) {
+            out.set(point.x, polygon.y, point.z);
+            return polygon;
+        }
+        return graph.getBoundaryIndex().findClosest(point, Float.MAX_VALUE, component, out);
+    }
+
     @Override
     public Vector3 getPointInPath(float x, float z) {
         Vector3 vector3 = new Vector3(x, z);
@@ -229,6 +652,73 @@ public final class PolygonNavMesh extends NavMesh {
         return graph;
     }
 
+    public float getSnapDistance() {
+        return snapDistance;
+    }
+
+    /**
+     * 设置起点终点修正距离
+     * <p>
+     * 大于0时，findPath的起点终点不在行走层则修正到该距离内最近的可行走点，调用方无需自行重试
+     * </p>
+     *
+     * @param snapDistance 0关闭
+     */
+    public void setSnapDistance(float snapDistance) {
+        this.snapDistance = snapDistance;
+    }
+
+    public PolygonPathCache getPathCache() {
+        return pathCache;
+    }
+
+    /**
+     * 设置多边形路径缓存，null关闭缓存
+     * <p>
+     * 缓存多边形通道，重复的起点终点多边形只重新计算拐点，适合NPC在固定地点间往返
+     * </p>
+     *
+     * @param pathCache
+     */
+    public void setPathCache(PolygonPathCache pathCache) {
+        this.pathCache = pathCache;
+    }
+
+    public boolean isRedirectUnreachable() {
+        return redirectUnreachable;
+    }
+
+    /**
+     * 终点与起点不连通时，是否改为寻路到起点连通区域内离终点最近的点，默认直接失败
+     *
+     * @param redirectUnreachable
+     */
+    public void setRedirectUnreachable(boolean redirectUnreachable) {
+        this.redirectUnreachable = redirectUnreachable;
+    }
+
+    public PolygonHeuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * 设置寻路消耗计算，如 {@link PolygonLandmarkHeuristic}，需可采纳(不高估)且线程安全
+     *
+     * @param heuristic
+     */
+    public void setHeuristic(PolygonHeuristic heuristic) {
+        this.heuristic = Objects.requireNonNull(heuristic);
+    }
+
+    /**
+     * 分层寻路抽象层
+     *
+     * @return 未开启分层寻路返回null
+     */
+    public PolygonRegionGraph getRegionGraph() {
+        return regionGraph;
+    }
+
     /**
      * 获取矩形
      *
@@ -306,38 +796,20 @@ public final class PolygonNavMesh extends NavMesh {
 
     /**
      * 获取随机点 <br>
-     * 长距离获取效率低
+     * 只遍历半径覆盖的网格，结果已打乱。按需生成模式返回新生成的最多 {@link #ON_DEMAND_RANDOM_POINTS} 个点
      *
      * @note 请勿修改返回对象数据
      */
     @Override
     public List<Vector3> getRandomPointsInPath(Vector3 center, float radius, float minDisToCenter) {
-        int x = (int) center.x;
-        int z = (int) center.z;
-        int offset = (int) Math.ceil(radius);
-        List<Vector3> targets = new ArrayList<>();
-        Set<Entry<Integer, Map<Integer, List<Vector3>>>> entrySet = this.graph.getAllRandomPointsInPath().entrySet();
-
-        for (Entry<Integer, Map<Integer, List<Vector3>>> entry : entrySet) {
-            if (Math.abs(entry.getKey().intValue() - x) <= offset) {
-                Set<Entry<Integer, List<Vector3>>> entrySet2 = entry.getValue().entrySet();
-                for (Entry<Integer, List<Vector3>> entry2 : entrySet2) {
-                    if (Math.abs(entry2.getKey() - z) <= offset) {
-                        // 高度验证
-                        if (graph.getPolygonData().isThreeDimensional()) {
-                            List<Vector3> positions = entry2.getValue();
-                            for (Vector3 point : positions) {
-                                if (Math.abs(center.y - point.y) < HIGH_PRECISION) {
-                                    targets.add(point);
-                                }
-                            }
-                        } else {
-                            targets.addAll(entry2.getValue());
-                        }
-                    }
-                }
-            }
+        AreaRandomPointSampler sampler = graph.getRandomPointSampler();
+        if (sampler != null) {
+            Vector3[] samples = new Vector3[ON_DEMAND_RANDOM_POINTS];
+            int n = sampler.sample(center, radius, minDisToCenter, getRandomPointHeightDiff(), samples);
+            return new ArrayList<>(Arrays.asList(samples).subList(0, n));
         }
+        List<Vector3> targets = new ArrayList<>();
+        graph.getRandomPointGrid().collect(center, radius, minDisToCenter, getRandomPointHeightDiff(), targets);
         Collections.shuffle(targets);
         return targets;
     }
@@ -351,11 +823,16 @@ public final class PolygonNavMesh extends NavMesh {
      * @return
      */
     public List<Vector3> copyRandomPointsInPath(Vector3 center, float radius, int count) {
-        List<Vector3> randomPointInPath = getRandomPointsInPath(center, radius, 0f);
-        List<Vector3> points = new ArrayList<>();
-        int n = randomPointInPath.size() > count ? count : randomPointInPath.size();
+        Vector3[] samples = new Vector3[Math.max(0, count)];
+        AreaRandomPointSampler sampler = graph.getRandomPointSampler();
+        if (sampler != null) {
+            int n = sampler.sample(center, radius, 0f, getRandomPointHeightDiff(), samples);
+            return new ArrayList<>(Arrays.asList(samples).subList(0, n));
+        }
+        int n = graph.getRandomPointGrid().sample(center, radius, 0f, getRandomPointHeightDiff(), samples);
+        List<Vector3> points = new ArrayList<>(n);
         for (int i = 0; i < n; i++) {
-            points.add(randomPointInPath.get(i).copy());
+            points.add(samples[i].copy());
         }
         return points;
     }
@@ -366,24 +843,41 @@ public final class PolygonNavMesh extends NavMesh {
      * @return
      */
     public Vector3 getRandomPointInMap() {
-        return graph.getAllPoints().get(MathUtil.random(graph.getAllPoints().size() - 1)).copy();
+        AreaRandomPointSampler sampler = graph.getRandomPointSampler();
+        if (sampler != null) {
+            Vector3 point = new Vector3();
+            return sampler.random(point) ? point : null;
+        }
+        Vector3 point = graph.getRandomPointGrid().random();
+        return point == null ? null : point.copy();
     }
 
     /**
-     * <p>
-     * 远距离效率不高
-     * <p>
+     * 范围内随机一个点，蓄水池抽样或按需生成，不创建候选列表
      */
     @Override
     public Vector3 getRandomPointInPath(Vector3 center, float radius, float minDisToCenter) {
-        List<Vector3> list = getRandomPointsInPath(center, radius, minDisToCenter);
-        Vector3 vector3 = MathUtil.random(list);
+        AreaRandomPointSampler sampler = graph.getRandomPointSampler();
+        if (sampler != null) {
+            Vector3 point = new Vector3();
+            return sampler.sample(center, radius, minDisToCenter, getRandomPointHeightDiff(), point) ? point : null;
+        }
+        Vector3 vector3 = graph.getRandomPointGrid().sample(center, radius, minDisToCenter, getRandomPointHeightDiff());
         if (vector3 != null) {
             return vector3.copy();
         }
         return null;
     }
 
+    /**
+     * 随机点与中心点的最大高度差，2D地图不验证高度
+     *
+     * @return
+     */
+    private float getRandomPointHeightDiff() {
+        return graph.getPolygonData().isThreeDimensional() ? HIGH_PRECISION : Float.POSITIVE_INFINITY;
+    }
+
     @Override
     public float getWidth() {
         return graph.getPolygonData().getWidth();
@@ -0,0 +1,324 @@
+package com.jzy.ai.nav.polygon;
+
+import com.alibaba.fastjson.JSON;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 多边形导航网格二进制快照
+ * <p>
+ * 离线将解析后的地图数据(缩放后的顶点、多边形索引、凸多边形、共享边、随机点及生成方式)写入二进制文件，
+ * 启动时内存映射读取，跳过JSON解析、共享边计算和随机点生成。四叉树按原顺序重新插入多边形，结构与原来一致。
+ * 文件头和CRC先通过堆内缓冲校验，校验通过后才映射，失效的快照不会被映射占用，可直接覆盖重新生成。
+ * <p>
+ * 文件格式：魔数、版本、源数据校验和、缩放倍数、数据长度、数据CRC32，之后为数据。
+ * 源数据或缩放倍数变化后校验和不同，快照失效。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class PolygonNavMeshSnapshot {
+    /**
+     * 文件标识 PNMS
+     */
+    private static final int MAGIC = 0x504E4D53;
+    private static final int VERSION = 3;
+    /**
+     * 文件头长度
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 4 + 4 + 8;
+    /**
+     * 校验CRC时每次读取的长度
+     */
+    private static final int CHECK_BUFFER_SIZE = 64 * 1024;
+
+    private PolygonNavMeshSnapshot() {
+    }
+
+    /**
+     * 源数据校验和
+     *
+     * @param navMeshStr 导航网格数据
+     * @param scale      放大倍数
+     * @return
+     */
+    public static long checksum(String navMeshStr, int scale) {
+        CRC32 crc = new CRC32();
+        crc.update(navMeshStr.getBytes(StandardCharsets.UTF_8));
+        return ((long) scale << 32) ^ crc.getValue();
+    }
+
+    /**
+     * 离线编译快照
+     *
+     * @param navMeshStr 导航网格数据
+     * @param scale      放大倍数
+     * @param file       快照文件
+     * @return 构建的寻路图
+     * @throws IOException
+     */
+    public static PolygonGraph compile(String navMeshStr, int scale, Path file) throws IOException {
+        return compile(navMeshStr, scale, RandomPointMode.BAKED, file);
+    }
+
+    /**
+     * 离线编译快照
+     *
+     * @param navMeshStr      导航网格数据
+     * @param scale           放大倍数
+     * @param randomPointMode 随机点生成方式，记录在快照中，读取时沿用
+     * @param file            快照文件
+     * @return 构建的寻路图
+     * @throws IOException
+     */
+    public static PolygonGraph compile(String navMeshStr, int scale, RandomPointMode randomPointMode, Path file)
+            throws IOException {
+        PolygonGraph graph = new PolygonGraph(JSON.parseObject(navMeshStr, PolygonData.class), scale,
+                randomPointMode);
+        write(graph, checksum(navMeshStr, scale), file);
+        return graph;
+    }
+
+    /**
+     * 写入快照，先写临时文件再替换，避免读取到不完整的文件
+     *
+     * @param graph
+     * @param sourceChecksum 源数据校验和 {@link #checksum(String, int)}
+     * @param file
+     * @throws IOException
+     */
+    public static void write(PolygonGraph graph, long sourceChecksum, Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        PolygonData data = graph.getPolygonData();
+        out.writeInt(data.getMapID());
+        out.writeFloat(data.getStartX());
+        out.writeFloat(data.getStartZ());
+        out.writeFloat(data.getEndX());
+        out.writeFloat(data.getEndZ());
+        out.writeBoolean(data.isThreeDimensional());
+
+        Vector3[] vertices = data.getPathVertices();
+        out.writeInt(vertices.length);
+        for (Vector3 vertex : vertices) {
+            writeVector(out, vertex);
+        }
+        int[] triangles = data.getPathTriangles();
+        out.writeInt(triangles.length);
+        for (int index : triangles) {
+            out.writeInt(index);
+        }
+        int[] polygonOffsets = data.getPolygonOffsets();
+        out.writeInt(polygonOffsets.length);
+        for (int offset : polygonOffsets) {
+            out.writeInt(offset);
+        }
+        int[] polygonVertexIndexs = data.getPolygonVertexIndexs();
+        out.writeInt(polygonVertexIndexs.length);
+        for (int index : polygonVertexIndexs) {
+            out.writeInt(index);
+        }
+
+        out.writeByte(graph.getRandomPointMode().ordinal());
+        List<Polygon> polygons = graph.getPolygons();
+        out.writeInt(polygons.size());
+        for (Polygon polygon : polygons) {
+            out.writeInt(polygon.getIndex());
+            out.writeInt(polygon.vectorIndexs.length);
+            for (int index : polygon.vectorIndexs) {
+                out.writeInt(index);
+            }
+            out.writeInt(polygon.randomPoints.size());
+            for (Vector3 point : polygon.randomPoints) {
+                writeVector(out, point);
+            }
+        }
+
+        int[] connections = graph.exportIndexConnections();
+        out.writeInt(connections.length);
+        for (int value : connections) {
+            out.writeInt(value);
+        }
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(temp)) {
+            DataOutputStream header = new DataOutputStream(os);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(sourceChecksum);
+            header.writeInt(graph.getScale());
+            header.writeInt(payload.length);
+            header.writeLong(crc.getValue());
+            header.write(payload);
+            header.flush();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照，不校验源数据
+     *
+     * @param file
+     * @return
+     * @throws IOException 文件不存在或损坏
+     */
+    public static PolygonGraph read(Path file) throws IOException {
+        return read(file, 0, false);
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param file
+     * @param sourceChecksum 源数据校验和 {@link #checksum(String, int)}
+     * @return
+     * @throws IOException 文件不存在、损坏或已过期
+     */
+    public static PolygonGraph read(Path file, long sourceChecksum) throws IOException {
+        return read(file, sourceChecksum, true);
+    }
+
+    private static PolygonGraph read(Path file, long sourceChecksum, boolean checkSource) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH) {
+                throw new IOException("navmesh snapshot too short: " + file);
+            }
+            // 映射在回收前一直占用文件(Windows下无法替换)，校验通过前只用堆内缓冲读取
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, 0, file);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("not a navmesh snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported navmesh snapshot version " + version + ": " + file);
+            }
+            long checksum = header.getLong();
+            if (checkSource && checksum != sourceChecksum) {
+                throw new IOException("navmesh snapshot is stale: " + file);
+            }
+            int scale = header.getInt();
+            int length = header.getInt();
+            long crcValue = header.getLong();
+            if (length != size - HEADER_LENGTH) {
+                throw new IOException("navmesh snapshot length mismatch: " + file);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CHECK_BUFFER_SIZE, length));
+            for (long position = HEADER_LENGTH; position < size; position += chunk.limit()) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), size - position));
+                readFully(channel, chunk, position, file);
+                chunk.flip();
+                crc.update(chunk);
+            }
+            if (crc.getValue() != crcValue) {
+                throw new IOException("navmesh snapshot checksum mismatch: " + file);
+            }
+            MappedByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH, length);
+            return readGraph(payload, scale);
+        }
+    }
+
+    /**
+     * 从指定位置读满缓冲
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path file)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("navmesh snapshot truncated: " + file);
+            }
+            position += read;
+        }
+    }
+
+    private static PolygonGraph readGraph(ByteBuffer in, int scale) {
+        PolygonData data = new PolygonData();
+        data.setMapID(in.getInt());
+        data.setStartX(in.getFloat());
+        data.setStartZ(in.getFloat());
+        data.setEndX(in.getFloat());
+        data.setEndZ(in.getFloat());
+        data.setThreeDimensional(in.get() != 0);
+
+        Vector3[] vertices = new Vector3[in.getInt()];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = readVector(in);
+        }
+        data.setPathVertices(vertices);
+        data.setPathTriangles(readInts(in));
+        int[] polygonOffsets = readInts(in);
+        int[] polygonVertexIndexs = readInts(in);
+        data.setPolygonIndexs(polygonOffsets, polygonVertexIndexs);
+        data.restore();
+
+        RandomPointMode randomPointMode = RandomPointMode.values()[in.get()];
+        int polygonCount = in.getInt();
+        List<Polygon> polygons = new ArrayList<>(polygonCount);
+        for (int i = 0; i < polygonCount; i++) {
+            int index = in.getInt();
+            int[] vectorIndexs = new int[in.getInt()];
+            List<Vector3> points = new ArrayList<>(vectorIndexs.length);
+            for (int j = 0; j < vectorIndexs.length; j++) {
+                vectorIndexs[j] = in.getInt();
+                points.add(vertices[vectorIndexs[j]]);
+            }
+            Polygon polygon = new Polygon(index, points, vectorIndexs);
+            int randomCount = in.getInt();
+            for (int j = 0; j < randomCount; j++) {
+                polygon.randomPoints.add(readVector(in));
+            }
+            polygons.add(polygon);
+        }
+
+        int[] connections = readInts(in);
+        return new PolygonGraph(data, scale, randomPointMode, polygons, connections);
+    }
+
+    private static void writeVector(DataOutputStream out, Vector3 vector) throws IOException {
+        out.writeFloat(vector.x);
+        out.writeFloat(vector.y);
+        out.writeFloat(vector.z);
+    }
+
+    /**
+     * 读取长度和int数组
+     */
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    private static Vector3 readVector(ByteBuffer in) {
+        return new Vector3(in.getFloat(), in.getFloat(), in.getFloat());
+    }
+}
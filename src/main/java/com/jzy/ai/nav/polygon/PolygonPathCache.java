@@ -0,0 +1,215 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphPath;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多边形路径缓存
+ * <p>
+ * 按(起点多边形, 终点多边形)缓存A*查询出的多边形通道(共享边序列)，命中后只需对实际起点终点重新计算拐点。
+ * 按CLOCK(二次机会)近似最近最少使用淘汰，限制缓存路径数和共享边总数。
+ * <p>
+ * 线程安全。读取不加锁，只在ConcurrentHashMap中查询并设置访问标记；
+ * 写入和淘汰加锁，淘汰时时钟指针依次扫描，跳过并清除有访问标记的路径，淘汰第一个无标记的路径。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonPathCache {
+    /**
+     * 最大路径数
+     */
+    private final int maxEntries;
+    /**
+     * 最大共享边总数，限制内存
+     */
+    private final int maxConnections;
+    private final ConcurrentHashMap<Long, CacheEntry> paths = new ConcurrentHashMap<>();
+    /**
+     * 淘汰扫描的时钟指针，加锁访问
+     */
+    private Iterator<CacheEntry> clockHand;
+    /**
+     * 当前共享边总数，加锁修改
+     */
+    private int connectionCount;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxEntries     最大路径数
+     * @param maxConnections 最大共享边总数
+     */
+    public PolygonPathCache(int maxEntries, int maxConnections) {
+        if (maxEntries <= 0 || maxConnections <= 0) {
+            throw new IllegalArgumentException("cache capacity must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxConnections = maxConnections;
+    }
+
+    private static long key(Polygon from, Polygon to) {
+        return ((long) from.getIndex() << 32) | (to.getIndex() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 获取缓存路径，不加锁
+     *
+     * @param from
+     * @param to
+     * @param outPath 命中时追加共享边
+     * @return 是否命中
+     */
+    public boolean get(Polygon from, Polygon to, GraphPath<Connection<Polygon>> outPath) {
+        CacheEntry entry = paths.get(key(from, to));
+        if (entry == null) {
+            missCount.increment();
+            return false;
+        }
+        hitCount.increment();
+        // 已标记时不再写，避免多线程反复写同一缓存行
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        // 缓存数组不可变
+        for (Connection<Polygon> connection : entry.connections) {
+            outPath.add(connection);
+        }
+        return true;
+    }
+
+    /**
+     * 缓存路径
+     *
+     * @param from
+     * @param to
+     * @param path
+     */
+    @SuppressWarnings("unchecked")
+    public void put(Polygon from, Polygon to, GraphPath<Connection<Polygon>> path) {
+        int count = path.getCount();
+        if (count > maxConnections) {
+            return;
+        }
+        Connection<Polygon>[] connections = (Connection<Polygon>[]) new Connection[count];
+        for (int i = 0; i < count; i++) {
+            connections[i] = path.get(i);
+        }
+        CacheEntry entry = new CacheEntry(key(from, to), connections);
+        synchronized (this) {
+            CacheEntry old = paths.put(entry.key, entry);
+            if (old != null) {
+                connectionCount -= old.connections.length;
+            }
+            connectionCount += count;
+            while (paths.size() > maxEntries || connectionCount > maxConnections) {
+                if (!evict(entry)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 淘汰一条路径，需加锁调用
+     *
+     * @param inserted 刚插入的路径，不淘汰
+     * @return 是否淘汰
+     */
+    private boolean evict(CacheEntry inserted) {
+        // 最多扫描两轮：第一轮清除访问标记，第二轮必定找到无标记的路径
+        int limit = paths.size() * 2 + 2;
+        for (int i = 0; i < limit; i++) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = paths.values().iterator();
+                if (!clockHand.hasNext()) {
+                    return false;
+                }
+            }
+            CacheEntry entry = clockHand.next();
+            if (entry == inserted) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                continue;
+            }
+            // 迭代器弱一致，可能返回已被替换的旧路径
+            if (paths.remove(entry.key, entry)) {
+                connectionCount -= entry.connections.length;
+                evictionCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 清除缓存，地图数据变化后调用
+     */
+    public synchronized void clear() {
+        paths.clear();
+        clockHand = null;
+        connectionCount = 0;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 命中率
+     *
+     * @return
+     */
+    public float getHitRate() {
+        long hit = hitCount.sum();
+        long total = hit + missCount.sum();
+        return total == 0 ? 0 : (float) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "PolygonPathCache{size=" + size() + ", connections=" + getConnectionCount() + ", hit=" + getHitCount()
+                + ", miss=" + getMissCount() + ", eviction=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * 缓存的路径，共享边数组不可变
+     */
+    private static final class CacheEntry {
+        private final long key;
+        private final Connection<Polygon>[] connections;
+        /**
+         * 访问标记，命中时设置，淘汰扫描时清除。新路径无标记，只查询过一次的路径先淘汰
+         */
+        private volatile boolean referenced;
+
+        private CacheEntry(long key, Connection<Polygon>[] connections) {
+            this.key = key;
+            this.connections = connections;
+        }
+    }
+}
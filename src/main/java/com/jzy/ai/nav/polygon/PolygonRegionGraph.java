@@ -0,0 +1,374 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.CsrGraph;
+import com.jzy.ai.pfa.IndexedGraph;
+import com.jzy.ai.pfa.IntBinaryHeap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多边形分区抽象层，分层寻路(HPA*)使用
+ * <p>
+ * 1、按多边形中心点划分网格，网格内互相连通的多边形组成一个区域<br>
+ * 2、有共享边连接到其他区域的多边形为入口，入口之间的抽象边为：跨区域的共享边，同区域内入口间的最短路径消耗<br>
+ * 3、作为 {@link IndexedGraph} 时只返回同区域的连接，用于区域内的局部寻路<br>
+ * <p>
+ * 构建后只读，可多线程共享。共享边为双向且消耗对称，区域内最短路径正反向消耗相同。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PolygonRegionGraph implements IndexedGraph<Polygon> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PolygonRegionGraph.class);
+    private final CsrGraph<Polygon> graph;
+    /**
+     * 区域边长
+     */
+    private final float regionSize;
+    /**
+     * 多边形序号对应区域，无多边形为-1
+     */
+    private final int[] regions;
+    private final int regionCount;
+    /**
+     * 多边形区域内的连接
+     */
+    private final List<Connection<Polygon>>[] regionConnections;
+    /**
+     * 多边形序号对应入口编号，非入口为-1
+     */
+    private final int[] entranceIds;
+    /**
+     * 入口编号对应多边形序号
+     */
+    private final int[] entrances;
+    /**
+     * 区域入口，regionEntrances[regionEntranceOffsets[r]..regionEntranceOffsets[r+1]) 为区域r的入口编号
+     */
+    private final int[] regionEntranceOffsets;
+    private final int[] regionEntrances;
+    /**
+     * 抽象边，edgeTargets[edgeOffsets[e]..edgeOffsets[e+1]) 为入口e连接的入口编号
+     */
+    private final int[] edgeOffsets;
+    private final int[] edgeTargets;
+    private final float[] edgeCosts;
+    /**
+     * 跨区域抽象边对应的共享边，区域内抽象边为null，需局部寻路细化
+     */
+    private final Connection<Polygon>[] edgeConnections;
+
+    /**
+     * @param graph      多边形CSR图
+     * @param regionSize 区域边长
+     */
+    @SuppressWarnings("unchecked")
+    public PolygonRegionGraph(CsrGraph<Polygon> graph, float regionSize) {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("region size must be positive: " + regionSize);
+        }
+        this.graph = graph;
+        this.regionSize = regionSize;
+        int nodeCount = graph.getNodeCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+
+        int[] cells = createCells(graph, regionSize);
+        this.regions = new int[nodeCount];
+        this.regionCount = createRegions(cells, offsets, targets, regions);
+
+        // 区域内连接、入口
+        this.regionConnections = (List<Connection<Polygon>>[]) new List[nodeCount];
+        this.entranceIds = new int[nodeCount];
+        int entranceCount = 0;
+        int[] regionEntranceCounts = new int[regionCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            entranceIds[i] = -1;
+            if (regions[i] < 0) {
+                regionConnections[i] = Collections.emptyList();
+                continue;
+            }
+            List<Connection<Polygon>> connections = new ArrayList<>(offsets[i + 1] - offsets[i]);
+            boolean entrance = false;
+            for (int edge = offsets[i]; edge < offsets[i + 1]; edge++) {
+                if (regions[targets[edge]] == regions[i]) {
+                    connections.add(graph.getConnection(edge));
+                } else {
+                    entrance = true;
+                }
+            }
+            regionConnections[i] = connections;
+            if (entrance) {
+                entranceIds[i] = entranceCount++;
+                regionEntranceCounts[regions[i] + 1]++;
+            }
+        }
+        this.entrances = new int[entranceCount];
+        this.regionEntranceOffsets = new int[regionCount + 1];
+        for (int r = 0; r < regionCount; r++) {
+            regionEntranceOffsets[r + 1] = regionEntranceOffsets[r] + regionEntranceCounts[r + 1];
+        }
+        this.regionEntrances = new int[entranceCount];
+        int[] fill = new int[regionCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int entrance = entranceIds[i];
+            if (entrance >= 0) {
+                entrances[entrance] = i;
+                int region = regions[i];
+                regionEntrances[regionEntranceOffsets[region] + fill[region]++] = entrance;
+            }
+        }
+
+        // 抽象边
+        List<AbstractEdge>[] edges = (List<AbstractEdge>[]) new List[entranceCount];
+        float[] dist = new float[nodeCount];
+        int[] marks = new int[nodeCount];
+        IntBinaryHeap heap = new IntBinaryHeap(nodeCount);
+        int edgeCount = 0;
+        for (int entrance = 0; entrance < entranceCount; entrance++) {
+            int node = entrances[entrance];
+            List<AbstractEdge> list = edges[entrance] = new ArrayList<>();
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                if (regions[target] != regions[node]) {
+                    list.add(new AbstractEdge(entranceIds[target], graph.getCosts()[edge], graph.getConnection(edge)));
+                }
+            }
+            searchRegion(node, dist, marks, entrance + 1, heap);
+            int region = regions[node];
+            for (int i = regionEntranceOffsets[region]; i < regionEntranceOffsets[region + 1]; i++) {
+                int other = regionEntrances[i];
+                if (other != entrance && marks[entrances[other]] == entrance + 1) {
+                    list.add(new AbstractEdge(other, dist[entrances[other]], null));
+                }
+            }
+            edgeCount += list.size();
+        }
+        this.edgeOffsets = new int[entranceCount + 1];
+        this.edgeTargets = new int[edgeCount];
+        this.edgeCosts = new float[edgeCount];
+        this.edgeConnections = (Connection<Polygon>[]) new Connection[edgeCount];
+        int edge = 0;
+        for (int entrance = 0; entrance < entranceCount; entrance++) {
+            for (AbstractEdge abstractEdge : edges[entrance]) {
+                edgeTargets[edge] = abstractEdge.target;
+                edgeCosts[edge] = abstractEdge.cost;
+                edgeConnections[edge] = abstractEdge.connection;
+                edge++;
+            }
+            edgeOffsets[entrance + 1] = edge;
+        }
+        LOGGER.debug("多边形分区：区域{} 入口{} 抽象边{}", regionCount, entranceCount, edgeCount);
+    }
+
+    /**
+     * 多边形中心点所在网格
+     *
+     * @param graph
+     * @param regionSize
+     * @return 多边形序号对应网格编号，无多边形为-1
+     */
+    private static int[] createCells(CsrGraph<Polygon> graph, float regionSize) {
+        int nodeCount = graph.getNodeCount();
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < nodeCount; i++) {
+            Polygon polygon = graph.getNode(i);
+            if (polygon != null) {
+                minX = Math.min(minX, polygon.center.x);
+                minZ = Math.min(minZ, polygon.center.z);
+                maxZ = Math.max(maxZ, polygon.center.z);
+            }
+        }
+        int rows = (int) ((maxZ - minZ) / regionSize) + 1;
+        int[] cells = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Polygon polygon = graph.getNode(i);
+            if (polygon == null) {
+                cells[i] = -1;
+                continue;
+            }
+            int column = (int) ((polygon.center.x - minX) / regionSize);
+            int row = (int) ((polygon.center.z - minZ) / regionSize);
+            cells[i] = column * rows + row;
+        }
+        return cells;
+    }
+
+    /**
+     * 网格内连通的多边形划分为同一区域
+     *
+     * @param cells
+     * @param offsets
+     * @param targets
+     * @param regions 输出，多边形对应区域
+     * @return 区域个数
+     */
+    private static int createRegions(int[] cells, int[] offsets, int[] targets, int[] regions) {
+        int nodeCount = cells.length;
+        Arrays.fill(regions, -1);
+        int[] stack = new int[nodeCount];
+        int regionCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (cells[i] < 0 || regions[i] >= 0) {
+                continue;
+            }
+            int region = regionCount++;
+            int top = 0;
+            stack[top++] = i;
+            regions[i] = region;
+            while (top > 0) {
+                int node = stack[--top];
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int target = targets[edge];
+                    if (regions[target] < 0 && cells[target] == cells[i]) {
+                        regions[target] = region;
+                        stack[top++] = target;
+                    }
+                }
+            }
+        }
+        return regionCount;
+    }
+
+    /**
+     * 区域内单源最短路径(Dijkstra)
+     *
+     * @param source 起点多边形序号
+     * @param dist   输出，marks[i]==mark 时有效
+     * @param marks  访问标记
+     * @param mark   本次标记
+     * @param heap   开列表
+     */
+    void searchRegion(int source, float[] dist, int[] marks, int mark, IntBinaryHeap heap) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        float[] costs = graph.getCosts();
+        int region = regions[source];
+        heap.clear();
+        marks[source] = mark;
+        dist[source] = 0;
+        heap.add(source, 0);
+        while (heap.size > 0) {
+            int node = heap.pop();
+            float cost = dist[node];
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                if (regions[target] != region) {
+                    continue;
+                }
+                float targetCost = cost + costs[edge];
+                if (marks[target] != mark) {
+                    marks[target] = mark;
+                    dist[target] = targetCost;
+                    heap.add(target, targetCost);
+                } else if (targetCost < dist[target] && heap.contains(target)) {
+                    dist[target] = targetCost;
+                    heap.setValue(target, targetCost);
+                }
+            }
+        }
+    }
+
+    /**
+     * 区域内的连接
+     */
+    @Override
+    public List<Connection<Polygon>> getConnections(Polygon fromNode) {
+        return regionConnections[fromNode.getIndex()];
+    }
+
+    @Override
+    public int getIndex(Polygon node) {
+        return node.getIndex();
+    }
+
+    @Override
+    public int getNodeCount() {
+        return graph.getNodeCount();
+    }
+
+    public CsrGraph<Polygon> getGraph() {
+        return graph;
+    }
+
+    public float getRegionSize() {
+        return regionSize;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * 多边形所在区域
+     *
+     * @param polygon
+     * @return
+     */
+    public int getRegion(Polygon polygon) {
+        return regions[polygon.getIndex()];
+    }
+
+    public int getEntranceCount() {
+        return entrances.length;
+    }
+
+    /**
+     * 入口编号对应多边形
+     *
+     * @param entrance
+     * @return
+     */
+    public Polygon getEntrance(int entrance) {
+        return graph.getNode(entrances[entrance]);
+    }
+
+    int getEntranceNode(int entrance) {
+        return entrances[entrance];
+    }
+
+    int[] getRegionEntranceOffsets() {
+        return regionEntranceOffsets;
+    }
+
+    int[] getRegionEntrances() {
+        return regionEntrances;
+    }
+
+    int[] getEdgeOffsets() {
+        return edgeOffsets;
+    }
+
+    int[] getEdgeTargets() {
+        return edgeTargets;
+    }
+
+    float[] getEdgeCosts() {
+        return edgeCosts;
+    }
+
+    Connection<Polygon>[] getEdgeConnections() {
+        return edgeConnections;
+    }
+
+    /**
+     * 构建时的抽象边
+     */
+    private static class AbstractEdge {
+        final int target;
+        final float cost;
+        final Connection<Polygon> connection;
+
+        AbstractEdge(int target, float cost, Connection<Polygon> connection) {
+            this.target = target;
+            this.cost = cost;
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.jzy.ai.nav.polygon;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机点网格
+ * <p>
+ * 预生成的随机点按网格排序存储(CSR)，坐标另存为float数组。范围查询只遍历覆盖的网格，
+ * 随机取点使用蓄水池抽样，不需要复制和打乱候选列表。
+ * <p>
+ * 构建后只读，可多线程共享，随机数使用 {@link ThreadLocalRandom}。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class RandomPointGrid {
+    /**
+     * 网格平均点数
+     */
+    private static final int POINTS_PER_CELL = 8;
+    /**
+     * 按网格排序的随机点
+     */
+    private final Vector3[] points;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private final float minX;
+    private final float minZ;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    /**
+     * points[cellOffsets[c]..cellOffsets[c+1]) 为网格c内的点
+     */
+    private final int[] cellOffsets;
+
+    /**
+     * @param points 随机点，返回的点为原对象，请勿修改
+     */
+    public RandomPointGrid(List<Vector3> points) {
+        int count = points.size();
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (Vector3 point : points) {
+            minX = Math.min(minX, point.x);
+            minZ = Math.min(minZ, point.z);
+            maxX = Math.max(maxX, point.x);
+            maxZ = Math.max(maxZ, point.z);
+        }
+        if (count == 0) {
+            minX = minZ = maxX = maxZ = 0;
+        }
+        float cellSize = (float) Math.sqrt((double) (maxX - minX) * (maxZ - minZ) * POINTS_PER_CELL / Math.max(1, count));
+        cellSize = Math.max(cellSize, 1);
+        this.minX = minX;
+        this.minZ = minZ;
+        this.cellSize = cellSize;
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxZ - minZ) / cellSize) + 1;
+
+        int cellCount = columns * rows;
+        this.cellOffsets = new int[cellCount + 1];
+        int[] cells = new int[count];
+        for (int i = 0; i < count; i++) {
+            Vector3 point = points.get(i);
+            cells[i] = column(point.x) * rows + row(point.z);
+            cellOffsets[cells[i] + 1]++;
+        }
+        for (int i = 0; i < cellCount; i++) {
+            cellOffsets[i + 1] += cellOffsets[i];
+        }
+        this.points = new Vector3[count];
+        this.xs = new float[count];
+        this.ys = new float[count];
+        this.zs = new float[count];
+        int[] fill = new int[cellCount];
+        for (int i = 0; i < count; i++) {
+            Vector3 point = points.get(i);
+            int position = cellOffsets[cells[i]] + fill[cells[i]]++;
+            this.points[position] = point;
+            xs[position] = point.x;
+            ys[position] = point.y;
+            zs[position] = point.z;
+        }
+    }
+
+    /**
+     * 范围内的所有点
+     *
+     * @param center
+     * @param radius        半径
+     * @param minDistance   到中心点的最小距离
+     * @param maxHeightDiff 与中心点的最大高度差，不验证高度传 {@link Float#POSITIVE_INFINITY}
+     * @param out           输出
+     */
+    public void collect(Vector3 center, float radius, float minDistance, float maxHeightDiff, List<Vector3> out) {
+        int c0 = column(center.x - radius), c1 = column(center.x + radius);
+        int r0 = row(center.z - radius), r1 = row(center.z + radius);
+        float radiusSq = radius * radius;
+        float minDistanceSq = minDistance * minDistance;
+        for (int c = c0; c <= c1; c++) {
+            // 同一列的网格连续存储
+            int end = cellOffsets[c * rows + r1 + 1];
+            for (int i = cellOffsets[c * rows + r0]; i < end; i++) {
+                if (accept(i, center, radiusSq, minDistanceSq, maxHeightDiff)) {
+                    out.add(points[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 范围内随机一个点
+     *
+     * @param center
+     * @param radius
+     * @param minDistance
+     * @param maxHeightDiff
+     * @return 范围内没有点返回null
+     */
+    public Vector3 sample(Vector3 center, float radius, float minDistance, float maxHeightDiff) {
+        Random random = ThreadLocalRandom.current();
+        int c0 = column(center.x - radius), c1 = column(center.x + radius);
+        int r0 = row(center.z - radius), r1 = row(center.z + radius);
+        float radiusSq = radius * radius;
+        float minDistanceSq = minDistance * minDistance;
+        int matched = 0;
+        Vector3 result = null;
+        for (int c = c0; c <= c1; c++) {
+            int end = cellOffsets[c * rows + r1 + 1];
+            for (int i = cellOffsets[c * rows + r0]; i < end; i++) {
+                if (accept(i, center, radiusSq, minDistanceSq, maxHeightDiff) && random.nextInt(++matched) == 0) {
+                    result = points[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 范围内随机不重复的多个点
+     *
+     * @param center
+     * @param radius
+     * @param minDistance
+     * @param maxHeightDiff
+     * @param out           输出，最多取out.length个
+     * @return 取到的个数
+     */
+    public int sample(Vector3 center, float radius, float minDistance, float maxHeightDiff, Vector3[] out) {
+        Random random = ThreadLocalRandom.current();
+        int k = out.length;
+        int c0 = column(center.x - radius), c1 = column(center.x + radius);
+        int r0 = row(center.z - radius), r1 = row(center.z + radius);
+        float radiusSq = radius * radius;
+        float minDistanceSq = minDistance * minDistance;
+        int matched = 0;
+        for (int c = c0; c <= c1; c++) {
+            int end = cellOffsets[c * rows + r1 + 1];
+            for (int i = cellOffsets[c * rows + r0]; i < end; i++) {
+                if (!accept(i, center, radiusSq, minDistanceSq, maxHeightDiff)) {
+                    continue;
+                }
+                if (matched < k) {
+                    out[matched] = points[i];
+                } else {
+                    int j = random.nextInt(matched + 1);
+                    if (j < k) {
+                        out[j] = points[i];
+                    }
+                }
+                matched++;
+            }
+        }
+        int count = Math.min(matched, k);
+        // 候选不足k个时按网格顺序填入，打乱
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Vector3 temp = out[i];
+            out[i] = out[j];
+            out[j] = temp;
+        }
+        return count;
+    }
+
+    /**
+     * 整个地图随机一个点
+     *
+     * @return 没有点返回null
+     */
+    public Vector3 random() {
+        if (points.length == 0) {
+            return null;
+        }
+        return points[ThreadLocalRandom.current().nextInt(points.length)];
+    }
+
+    private boolean accept(int i, Vector3 center, float radiusSq, float minDistanceSq, float maxHeightDiff) {
+        float dx = xs[i] - center.x;
+        float dz = zs[i] - center.z;
+        float distanceSq = dx * dx + dz * dz;
+        return distanceSq <= radiusSq && distanceSq >= minDistanceSq && Math.abs(ys[i] - center.y) < maxHeightDiff;
+    }
+
+    private int column(float x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(float z) {
+        return Math.min(rows - 1, Math.max(0, (int) ((z - minZ) / cellSize)));
+    }
+
+    public int size() {
+        return points.length;
+    }
+}
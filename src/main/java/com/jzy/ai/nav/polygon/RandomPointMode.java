@@ -0,0 +1,18 @@
+package com.jzy.ai.nav.polygon;
+
+/**
+ * 随机点生成方式
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public enum RandomPointMode {
+    /**
+     * 加载时按三角形面积预生成随机点，取点只在预生成的点中选择
+     */
+    BAKED,
+    /**
+     * 按面积加权按需生成 {@link AreaRandomPointSampler}，不占用随机点内存，大地图推荐
+     */
+    ON_DEMAND
+}
@@ -13,6 +13,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * 三角形
@@ -93,6 +94,24 @@ public class Triangle implements Shape {
     public Vector3 getRandomPoint(Vector3 out) {
         final float sr1 = (float) Math.sqrt(MathUtil.random());
         final float r2 = MathUtil.random();
+        return getRandomPoint(sr1, r2, out);
+    }
+
+    /**
+     * Calculates a random point in this triangle using the given random source,
+     * e.g. a {@link java.util.concurrent.ThreadLocalRandom} when called from multiple threads.
+     *
+     * @param random Random source
+     * @param out    Output vector
+     * @return Output for chaining
+     */
+    public Vector3 getRandomPoint(Random random, Vector3 out) {
+        final float sr1 = (float) Math.sqrt(random.nextFloat());
+        final float r2 = random.nextFloat();
+        return getRandomPoint(sr1, r2, out);
+    }
+
+    private Vector3 getRandomPoint(float sr1, float r2, Vector3 out) {
         final float k1 = 1 - sr1;
         final float k2 = sr1 * (1 - r2);
         final float k3 = sr1 * r2;
@@ -4,6 +4,8 @@ package com.jzy.ai.nav.triangle;
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMeshData;
 import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.CsrGraph;
+import com.jzy.ai.pfa.GraphComponents;
 import com.jzy.ai.pfa.IndexedGraph;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.LoggerFactory;
@@ -29,6 +31,18 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
      * 独立边
      */
     private final Map<Triangle, List<TriangleEdge>> isolatedEdgesMap;
+    /**
+     * 加载后冻结的CSR图，寻路使用
+     */
+    private final CsrGraph<Triangle> csrGraph;
+    /**
+     * 连通区域
+     */
+    private final GraphComponents components;
+    /**
+     * 三角形网格索引，坐标点定位
+     */
+    private final TriangleGrid triangleGrid;
     private List<Triangle> triangles = new ArrayList<>();
     private int numDisconnectedEdges; // 不相连边的个数
     private int numConnectedEdges; // 相互连接边的数目
@@ -46,6 +60,9 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
         sharedEdges = createSharedEdgesMap(pathIndexConnections, pathTriangles,
                 Arrays.asList(navMeshData.getPathVertices()));
         isolatedEdgesMap = createIsolatedEdgesMap(sharedEdges);
+        csrGraph = createCsrGraph();
+        components = GraphComponents.build(csrGraph);
+        triangleGrid = new TriangleGrid(triangles);
 
         // Count edges of different types
         for (List<TriangleEdge> edges : isolatedEdgesMap.values()) {
@@ -62,6 +79,10 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
 
     /**
      * 获得三角形顶点坐标的共享边
+     * <p>
+     * 以排序后的边顶点序号为键建立哈希表，只检测共边的三角形对，线性时间。
+     * 候选三角形对按序号排序后依次加入，结果及迭代顺序与逐对比较相同
+     * </p>
      *
      * @param indices 顶点下标列表
      * @return
@@ -69,42 +90,138 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
      * @QQ 359135103 2017年11月8日 下午4:12:33
      */
     private static Set<IndexConnection> getIndexConnections(int[] indices) {
+        int triangleCount = indices.length / 3;
+        long[] pairs = createSharedEdgePairs(indices, triangleCount);
         Set<IndexConnection> indexConnections = new HashSet<IndexConnection>();
         int[] edge = {-1, -1};
-        short i = 0;
-        int j, a0, a1, a2, b0, b1, b2, triAIndex, triBIndex;
-        while (i < indices.length) {
-            triAIndex = (short) (i / 3); // A三角形编号
-            a0 = indices[i++];
-            a1 = indices[i++];
-            a2 = indices[i++];
-            j = i;
-            while (j < indices.length) {
-
-                triBIndex = (short) (j / 3); // B三角形编号
-                b0 = indices[j++];
-                b1 = indices[j++];
-                b2 = indices[j++];
-                if (triAIndex == triBIndex) {
-                    // j+=3;
-                    continue;
-                }
-                if (hasSharedEdgeIndices(a0, a1, a2, b0, b1, b2, edge)) {
-                    IndexConnection indexConnection1 = new IndexConnection(edge[0], edge[1], triAIndex, triBIndex);
-                    IndexConnection indexConnection2 = new IndexConnection(edge[1], edge[0], triBIndex, triAIndex);
-                    indexConnections.add(indexConnection1);
-                    indexConnections.add(indexConnection2);
-                    edge[0] = -1;
-                    edge[1] = -1;
-                    // LOGGER.debug("共享边：{} ->
-                    // {}",indexConnection1.toString(),indexConnection2.toString());
-                }
+        long last = -1;
+        for (long pair : pairs) {
+            if (pair == last) {
+                continue;
+            }
+            last = pair;
+            int triAIndex = (int) (pair >>> 32); // A三角形编号
+            int triBIndex = (int) pair; // B三角形编号
+            int a = triAIndex * 3;
+            int b = triBIndex * 3;
+            if (hasSharedEdgeIndices(indices[a], indices[a + 1], indices[a + 2], indices[b], indices[b + 1],
+                    indices[b + 2], edge)) {
+                IndexConnection indexConnection1 = new IndexConnection(edge[0], edge[1], triAIndex, triBIndex);
+                IndexConnection indexConnection2 = new IndexConnection(edge[1], edge[0], triBIndex, triAIndex);
+                indexConnections.add(indexConnection1);
+                indexConnections.add(indexConnection2);
+                edge[0] = -1;
+                edge[1] = -1;
             }
         }
         LOGGER.debug("连接个数：{}", indexConnections.size());
         return indexConnections;
     }
 
+    /**
+     * 可能有共享边的三角形对
+     * <p>
+     * 1、边顶点序号(小,大)为键，开放寻址哈希表记录该边最近加入的三角形边，相同边的三角形边串成链表<br>
+     * 2、有重复顶点的退化三角形，只共一个顶点也可能判定为共边，按顶点补充候选
+     * </p>
+     *
+     * @param indices
+     * @param triangleCount
+     * @return 升序的三角形对，高32位为序号小的三角形，可能重复
+     */
+    private static long[] createSharedEdgePairs(int[] indices, int triangleCount) {
+        int edgeCount = triangleCount * 3;
+        int capacity = Integer.highestOneBit(Math.max(edgeCount, 1) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        long[] keys = new long[capacity];
+        int[] heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        int[] next = new int[edgeCount];
+        long[] pairs = new long[Math.max(16, edgeCount)];
+        int pairCount = 0;
+        boolean degenerate = false;
+        for (int tri = 0; tri < triangleCount; tri++) {
+            int base = tri * 3;
+            int v0 = indices[base], v1 = indices[base + 1], v2 = indices[base + 2];
+            if (v0 == v1 || v1 == v2 || v2 == v0) {
+                degenerate = true;
+            }
+            for (int k = 0; k < 3; k++) {
+                int p = indices[base + k];
+                int q = indices[base + (k + 1) % 3];
+                long key = p < q ? ((long) p << 32) | (q & 0xFFFFFFFFL) : ((long) q << 32) | (p & 0xFFFFFFFFL);
+                int slot = (int) (mix(key) & mask);
+                while (heads[slot] >= 0 && keys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                for (int e = heads[slot]; e >= 0; e = next[e]) {
+                    int other = e / 3;
+                    if (other != tri) {
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairCount * 2);
+                        }
+                        pairs[pairCount++] = ((long) other << 32) | tri;
+                    }
+                }
+                keys[slot] = key;
+                next[base + k] = heads[slot];
+                heads[slot] = base + k;
+            }
+        }
+        if (degenerate) {
+            pairs = appendDegeneratePairs(indices, triangleCount, pairs, pairCount);
+            pairCount = pairs.length;
+        }
+        pairs = Arrays.copyOf(pairs, pairCount);
+        Arrays.sort(pairs);
+        return pairs;
+    }
+
+    /**
+     * 退化三角形与共顶点三角形组成的候选对
+     *
+     * @param indices
+     * @param triangleCount
+     * @param pairs
+     * @param pairCount
+     * @return 合并后的候选对，数组长度即个数
+     */
+    private static long[] appendDegeneratePairs(int[] indices, int triangleCount, long[] pairs, int pairCount) {
+        Map<Integer, List<Integer>> vertexTriangles = new HashMap<>();
+        for (int i = 0; i < triangleCount * 3; i++) {
+            List<Integer> list = vertexTriangles.computeIfAbsent(indices[i], k -> new ArrayList<>(6));
+            int tri = i / 3;
+            if (list.isEmpty() || list.get(list.size() - 1) != tri) {
+                list.add(tri);
+            }
+        }
+        List<Long> extra = new ArrayList<>();
+        for (int tri = 0; tri < triangleCount; tri++) {
+            int base = tri * 3;
+            int v0 = indices[base], v1 = indices[base + 1], v2 = indices[base + 2];
+            if (v0 != v1 && v1 != v2 && v2 != v0) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                for (int other : vertexTriangles.get(indices[base + k])) {
+                    if (other != tri) {
+                        extra.add(other < tri ? ((long) other << 32) | tri : ((long) tri << 32) | other);
+                    }
+                }
+            }
+        }
+        long[] result = Arrays.copyOf(pairs, pairCount + extra.size());
+        for (int i = 0; i < extra.size(); i++) {
+            result[pairCount + i] = extra.get(i);
+        }
+        return result;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+
     /**
      * 检测是否有共享边 Checks if the two triangles have shared vertex indices. The edge
      * will always follow the vertex winding order of the triangle A. Since all
@@ -228,12 +345,64 @@ public class TriangleGraph implements IndexedGraph<Triangle> {
         return disconnectionMap;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public List<Connection<Triangle>> getConnections(Triangle fromNode) {
-        return (List<Connection<Triangle>>) (List<?>) sharedEdges.get(fromNode);
-        // return (Array<Connection<Triangle>>) (Array<?>)
-        // sharedEdges.getValueAt(fromNode.index);
+        // 与sharedEdges中的列表内容顺序一致，避免TreeMap查询
+        return fromNode.connections;
+    }
+
+    /**
+     * 创建CSR图，共享边顶点记录顶点序号
+     *
+     * @return
+     */
+    private CsrGraph<Triangle> createCsrGraph() {
+        Vector3[] vertices = navMeshData.getPathVertices();
+        Map<Vector3, Integer> vertexIndexs = new IdentityHashMap<>(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            vertexIndexs.putIfAbsent(vertices[i], i);
+        }
+        return CsrGraph.build(this, triangles,
+                c -> vertexIndexs.getOrDefault(((TriangleEdge) c).rightVertex, -1),
+                c -> vertexIndexs.getOrDefault(((TriangleEdge) c).leftVertex, -1));
+    }
+
+    /**
+     * 寻路使用的CSR图
+     *
+     * @return
+     */
+    public CsrGraph<Triangle> getCsrGraph() {
+        return csrGraph;
+    }
+
+    /**
+     * 三角形连通区域
+     *
+     * @return
+     */
+    public GraphComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * 两三角形是否连通
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public boolean isConnected(Triangle from, Triangle to) {
+        return components.isConnected(from.getIndex(), to.getIndex());
+    }
+
+    /**
+     * 三角形网格索引
+     *
+     * @return
+     */
+    public TriangleGrid getTriangleGrid() {
+        return triangleGrid;
     }
 
     @Override
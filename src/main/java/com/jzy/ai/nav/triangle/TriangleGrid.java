@@ -0,0 +1,109 @@
+package com.jzy.ai.nav.triangle;
+
+import com.jzy.ai.nav.UniformGrid;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.List;
+
+/**
+ * 三角形均匀网格索引，坐标点定位三角形
+ * <p>
+ * 按三角形外包矩形(AABB)放入覆盖的所有网格({@link UniformGrid})，网格内三角形按序号升序存储。
+ * 查询只检测坐标点所在网格的三角形，与遍历全部三角形取第一个结果相同。
+ * <p>
+ * 构建后只读，可多线程共享。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class TriangleGrid {
+    private final Triangle[] triangles;
+    private final UniformGrid grid;
+
+    /**
+     * @param triangles 三角形，序号与列表位置一致
+     */
+    public TriangleGrid(List<Triangle> triangles) {
+        this.triangles = triangles.toArray(new Triangle[0]);
+        float[] bounds = new float[this.triangles.length * 4];
+        for (int i = 0; i < this.triangles.length; i++) {
+            Triangle triangle = this.triangles[i];
+            bounds[i * 4] = min(triangle.a.x, triangle.b.x, triangle.c.x);
+            bounds[i * 4 + 1] = min(triangle.a.z, triangle.b.z, triangle.c.z);
+            bounds[i * 4 + 2] = max(triangle.a.x, triangle.b.x, triangle.c.x);
+            bounds[i * 4 + 3] = max(triangle.a.z, triangle.b.z, triangle.c.z);
+        }
+        this.grid = new UniformGrid(bounds);
+    }
+
+    /**
+     * 坐标点所在的三角形
+     *
+     * @param point
+     * @return 序号最小的包含坐标点的三角形，不在网格中返回null
+     */
+    public Triangle getTriangle(Vector3 point) {
+        int cell = grid.cell(point.x, point.z);
+        if (cell < 0) {
+            return null;
+        }
+        int[] cellOffsets = grid.getCellOffsets();
+        int[] cellTriangles = grid.getCellItems();
+        for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+            Triangle triangle = triangles[cellTriangles[i]];
+            if (triangle.isInnerPoint(point)) {
+                return triangle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 坐标点所在的三角形，分层重叠时取高度最接近的
+     *
+     * @param point
+     * @return 不在网格中返回null
+     */
+    public Triangle getTriangleByHeight(Vector3 point) {
+        int cell = grid.cell(point.x, point.z);
+        if (cell < 0) {
+            return null;
+        }
+        int[] cellOffsets = grid.getCellOffsets();
+        int[] cellTriangles = grid.getCellItems();
+        Triangle result = null;
+        float minDistance = Float.MAX_VALUE;
+        for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+            Triangle triangle = triangles[cellTriangles[i]];
+            if (!triangle.isInnerPoint(point)) {
+                continue;
+            }
+            float distance = Math.abs(triangle.y - point.y);
+            if (distance < minDistance) {
+                minDistance = distance;
+                result = triangle;
+            }
+        }
+        return result;
+    }
+
+    private static float min(float a, float b, float c) {
+        return Math.min(a, Math.min(b, c));
+    }
+
+    private static float max(float a, float b, float c) {
+        return Math.max(a, Math.max(b, c));
+    }
+
+    public int getColumns() {
+        return grid.getColumns();
+    }
+
+    public int getRows() {
+        return grid.getRows();
+    }
+
+    public float getCellSize() {
+        return grid.getCellSize();
+    }
+}
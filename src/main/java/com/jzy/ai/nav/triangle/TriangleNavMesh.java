@@ -3,13 +3,16 @@ package com.jzy.ai.nav.triangle;
 
 import com.alibaba.fastjson.JSON;
 import com.jzy.ai.nav.NavMesh;
-import com.jzy.ai.pfa.IndexedAStarPathFinder;
+import com.jzy.ai.nav.NavMeshRaycastHit;
+import com.jzy.ai.pfa.Connection;
+import com.jzy.ai.pfa.GraphPath;
+import com.jzy.ai.pfa.PathFinder;
+import com.jzy.ai.pfa.PathFinderType;
 import com.jzy.javalib.math.geometry.Vector3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.Optional;
 
 /**
  * 寻路网格
@@ -22,10 +25,44 @@ import java.util.Optional;
  */
 public class TriangleNavMesh extends NavMesh {
     private static final Logger LOGGER = LoggerFactory.getLogger(TriangleNavMesh.class);
+    /**
+     * 射线检测的三角形顶点访问
+     */
+    private static final RaycastCells<Triangle> TRIANGLE_CELLS = new RaycastCells<Triangle>() {
+        @Override
+        public int getVertexCount(Triangle cell) {
+            return 3;
+        }
+
+        @Override
+        public Vector3 getVertex(Triangle cell, int i) {
+            return i == 0 ? cell.a : i == 1 ? cell.b : cell.c;
+        }
+
+        @Override
+        public boolean isInnerPoint(Triangle cell, Vector3 point) {
+            return cell.isInnerPoint(point);
+        }
+
+        @Override
+        public float getY(Triangle cell) {
+            return cell.y;
+        }
+
+        @Override
+        public Vector3 getPortalRight(Connection<Triangle> connection) {
+            return ((TriangleEdge) connection).rightVertex;
+        }
+
+        @Override
+        public Vector3 getPortalLeft(Connection<Triangle> connection) {
+            return ((TriangleEdge) connection).leftVertex;
+        }
+    };
 
     private final TriangleGraph graph; // 导航数据图
     private final TriangleHeuristic heuristic; // 寻路消耗计算
-    private final IndexedAStarPathFinder<Triangle> pathFinder; // A*寻路算法
+    private final PathFinder<Triangle> pathFinder; // A*寻路算法
 
 
     public TriangleNavMesh(String navMeshStr) {
@@ -37,8 +74,30 @@ public class TriangleNavMesh extends NavMesh {
      * @param scale      放大倍数
      */
     public TriangleNavMesh(String navMeshStr, int scale) {
-        graph = new TriangleGraph(JSON.parseObject(navMeshStr, TriangleData.class), scale);
-        pathFinder = new IndexedAStarPathFinder<Triangle>(graph);
+        this(navMeshStr, scale, PathFinderType.INDEXED_A_STAR);
+    }
+
+    /**
+     * @param navMeshStr     导航网格数据
+     * @param scale          放大倍数
+     * @param pathFinderType 寻路引擎
+     */
+    public TriangleNavMesh(String navMeshStr, int scale, PathFinderType pathFinderType) {
+        this(navMeshStr, scale, pathFinderType, 0);
+    }
+
+    /**
+     * @param navMeshStr        导航网格数据
+     * @param scale             放大倍数
+     * @param pathFinderType    寻路引擎
+     * @param vertexWeldEpsilon 重复顶点合并精度，0只合并坐标完全相同的顶点
+     */
+    public TriangleNavMesh(String navMeshStr, int scale, PathFinderType pathFinderType, float vertexWeldEpsilon) {
+        TriangleData data = JSON.parseObject(navMeshStr, TriangleData.class);
+        // 构建导航图时数据检测合并顶点，需在之前设置
+        data.setVertexWeldEpsilon(vertexWeldEpsilon);
+        graph = new TriangleGraph(data, scale);
+        pathFinder = pathFinderType.create(graph.getCsrGraph());
         heuristic = new TriangleHeuristic();
     }
 
@@ -50,7 +109,7 @@ public class TriangleNavMesh extends NavMesh {
         return heuristic;
     }
 
-    public IndexedAStarPathFinder<Triangle> getPathFinder() {
+    public PathFinder<Triangle> getPathFinder() {
         return pathFinder;
     }
 
@@ -64,7 +123,23 @@ public class TriangleNavMesh extends NavMesh {
     private boolean findPath(Vector3 fromPoint, Vector3 toPoint, TriangleGraphPath path) {
         path.clear();
         Triangle fromTriangle = getTriangle(fromPoint);
-        if (pathFinder.searchConnectionPath(fromTriangle, getTriangle(toPoint), heuristic, path)) {
+        Triangle toTriangle = getTriangle(toPoint);
+        // 不连通直接返回，避免遍历整个可达区域
+        if (fromTriangle != null && toTriangle != null && !graph.isConnected(fromTriangle, toTriangle)) {
+            LOGGER.debug("三角形{}和{}不连通", fromTriangle.getIndex(), toTriangle.getIndex());
+            return false;
+        }
+        // 直线可达，直接使用射线经过的三角形，不再A*
+        if (fromTriangle != null && toTriangle != null && fromTriangle != toTriangle) {
+            path.startTri = fromTriangle;
+            if (!raycast(fromTriangle, fromPoint, toPoint, null, path) && path.getEndTriangle() == toTriangle) {
+                path.start = new Vector3(fromPoint);
+                path.end = new Vector3(toPoint);
+                return true;
+            }
+            path.clear();
+        }
+        if (pathFinder.searchConnectionPath(fromTriangle, toTriangle, heuristic, path)) {
             path.start = new Vector3(fromPoint);
             path.end = new Vector3(toPoint);
             path.startTri = fromTriangle;
@@ -73,6 +148,35 @@ public class TriangleNavMesh extends NavMesh {
         return false;
     }
 
+    /**
+     * 射线检测，沿直线穿过共享边，碰到边界边停止
+     *
+     * @param from
+     * @param to
+     * @param hit  输出结果，可为null
+     * @return true 碰到边界，不能直线到达
+     */
+    @Override
+    public boolean raycast(Vector3 from, Vector3 to, NavMeshRaycastHit hit) {
+        return raycast(getTriangle(from), from, to, hit, null);
+    }
+
+    /**
+     * 射线检测
+     *
+     * @param start    起点所在三角形
+     * @param from
+     * @param to
+     * @param hit      输出结果，可为null
+     * @param corridor 输出，射线经过的共享边，可为null
+     * @return true 碰到边界
+     */
+    private boolean raycast(Triangle start, Vector3 from, Vector3 to, NavMeshRaycastHit hit,
+                            GraphPath<Connection<Triangle>> corridor) {
+        return raycast(graph.getCsrGraph(), graph.getNavMeshData().getPathVertices(), TRIANGLE_CELLS, start, from, to, hit,
+                corridor);
+    }
+
     /**
      * 获取路径
      *
@@ -94,18 +198,19 @@ public class TriangleNavMesh extends NavMesh {
 
     /**
      * 获取坐标点所在的三角形
+     * <p>
+     * 网格索引只检测坐标点所在网格的三角形；3D地图可能有分层重叠，取高度最接近的三角形
+     * </p>
      *
      * @param point
      * @return
-     * @note 很耗时，迭代所有三角形寻找
      */
     public Triangle getTriangle(Vector3 point) {
-        //TODO 高度判断，有可能有分层重叠多边形
-        Optional<Triangle> optional = graph.getTriangles().stream().filter(t -> t.isInnerPoint(point)).findFirst();
-        if (optional.isPresent()) {
-            return optional.get();
+        TriangleGrid grid = graph.getTriangleGrid();
+        if (graph.getNavMeshData().isThreeDimensional()) {
+            return grid.getTriangleByHeight(point);
         }
-        return null;
+        return grid.getTriangle(point);
     }
 
     /**
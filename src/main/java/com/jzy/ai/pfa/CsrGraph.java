@@ -0,0 +1,196 @@
+package com.jzy.ai.pfa;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * 压缩稀疏行(CSR)格式的只读索引图
+ * <br>
+ * 图加载完成后构建一次，节点 i 的出边存放在 [offsets[i], offsets[i + 1]) 区间，
+ * 目标节点索引、预先计算的消耗和共享边顶点序号分别存放在连续数组中，
+ * {@link FlatAStarPathFinder} 展开节点时直接遍历数组，不再查询Map和对象列表，
+ * 导航网格射线检测按共享边顶点序号查找穿过的共享边。
+ * <p>
+ * 原对象图仍然保留，{@link #getConnections(Object)} 委托给原图，供界面和工具使用。
+ *
+ * @param <N> Type of node
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class CsrGraph<N> implements IndexedGraph<N> {
+    /**
+     * 原对象图
+     */
+    private final IndexedGraph<N> source;
+    /**
+     * 节点出边起始位置，长度为节点数+1
+     */
+    private final int[] offsets;
+    /**
+     * 出边指向的节点索引
+     */
+    private final int[] targets;
+    /**
+     * 出边消耗
+     */
+    private final float[] costs;
+    /**
+     * 出边共享边顶点序号，每条边两个(右顶点,左顶点)，未知为-1
+     */
+    private final int[] portals;
+    /**
+     * 出边对应的连接对象，用于输出路径
+     */
+    private final Connection<N>[] connections;
+    /**
+     * 索引对应的节点
+     */
+    private final N[] nodes;
+
+    private CsrGraph(IndexedGraph<N> source, int[] offsets, int[] targets, float[] costs, int[] portals,
+                     Connection<N>[] connections, N[] nodes) {
+        this.source = source;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.costs = costs;
+        this.portals = portals;
+        this.connections = connections;
+        this.nodes = nodes;
+    }
+
+    /**
+     * 构建CSR图
+     *
+     * @param graph 原对象图
+     * @param nodes 图中所有节点
+     * @return
+     */
+    public static <N> CsrGraph<N> build(IndexedGraph<N> graph, List<N> nodes) {
+        return build(graph, nodes, null, null);
+    }
+
+    /**
+     * 构建CSR图
+     *
+     * @param graph       原对象图
+     * @param nodes       图中所有节点
+     * @param rightVertex 共享边右顶点序号，可为null
+     * @param leftVertex  共享边左顶点序号，可为null
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <N> CsrGraph<N> build(IndexedGraph<N> graph, List<N> nodes, ToIntFunction<Connection<N>> rightVertex,
+                                        ToIntFunction<Connection<N>> leftVertex) {
+        int nodeCount = graph.getNodeCount();
+        for (N node : nodes) {
+            nodeCount = Math.max(nodeCount, graph.getIndex(node) + 1);
+        }
+        N[] indexNodes = (N[]) new Object[nodeCount];
+        int[] offsets = new int[nodeCount + 1];
+        for (N node : nodes) {
+            int index = graph.getIndex(node);
+            indexNodes[index] = node;
+            offsets[index + 1] = graph.getConnections(node).size();
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int edgeCount = offsets[nodeCount];
+        int[] targets = new int[edgeCount];
+        float[] costs = new float[edgeCount];
+        int[] portals = new int[edgeCount << 1];
+        Connection<N>[] connections = (Connection<N>[]) new Connection[edgeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            N node = indexNodes[i];
+            if (node == null) {
+                continue;
+            }
+            List<Connection<N>> list = graph.getConnections(node);
+            int edge = offsets[i];
+            for (int j = 0; j < list.size(); j++, edge++) {
+                Connection<N> connection = list.get(j);
+                connections[edge] = connection;
+                targets[edge] = graph.getIndex(connection.getToNode());
+                costs[edge] = connection.getCost();
+                portals[edge << 1] = rightVertex == null ? -1 : rightVertex.applyAsInt(connection);
+                portals[(edge << 1) + 1] = leftVertex == null ? -1 : leftVertex.applyAsInt(connection);
+            }
+        }
+        return new CsrGraph<>(graph, offsets, targets, costs, portals, connections, indexNodes);
+    }
+
+    @Override
+    public List<Connection<N>> getConnections(N fromNode) {
+        return source.getConnections(fromNode);
+    }
+
+    @Override
+    public int getIndex(N node) {
+        return source.getIndex(node);
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * 原对象图
+     *
+     * @return
+     */
+    public IndexedGraph<N> getSource() {
+        return source;
+    }
+
+    /**
+     * 索引对应节点
+     *
+     * @param index
+     * @return
+     */
+    public N getNode(int index) {
+        return nodes[index];
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    public float[] getCosts() {
+        return costs;
+    }
+
+    /**
+     * 出边共享边顶点序号，每条边两个(右顶点,左顶点)，射线检测按序号取顶点坐标
+     *
+     * @return
+     */
+    public int[] getPortals() {
+        return portals;
+    }
+
+    /**
+     * 出边对应的连接
+     *
+     * @param edge 边序号
+     * @return
+     */
+    public Connection<N> getConnection(int edge) {
+        return connections[edge];
+    }
+
+    /**
+     * 边的条数
+     *
+     * @return
+     */
+    public int getEdgeCount() {
+        return targets.length;
+    }
+}
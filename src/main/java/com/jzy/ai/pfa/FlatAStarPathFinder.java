@@ -0,0 +1,362 @@
+package com.jzy.ai.pfa;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+
+/**
+ * A*寻路，数组结构实现
+ * <br>
+ * 与 {@link IndexedAStarPathFinder} 算法相同，但不为每个节点创建 NodeRecord 对象，
+ * 搜索数据(已消耗、父节点、类别、搜索编号)按 {@link IndexedGraph#getIndex(Object)} 存放在平行的基本类型数组中，
+ * 开列表使用 {@link IntBinaryHeap}。寻路过程中不分配对象，大地图上缓存命中率更高。
+ * <p>
+ * 图为 {@link CsrGraph} 时，展开节点直接遍历连续的边数组。
+ * <p>
+ * 非线程安全，多线程需每个线程持有独立实例。
+ *
+ * @param <N> Type of node
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class FlatAStarPathFinder<N> implements PathFinder<N> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlatAStarPathFinder.class);
+    private static final byte UNVISITED = 0;
+    private static final byte OPEN = 1;
+    private static final byte CLOSED = 2;    //已访问的节点
+    public IndexedAStarPathFinder.Metrics metrics;
+    final IndexedGraph<N> graph;    //图数据
+    /**
+     * CSR图，非CSR格式为null
+     */
+    final CsrGraph<N> csrGraph;
+    /**
+     * 从起点到节点的消耗
+     */
+    final float[] costSoFar;
+    /**
+     * 父节点索引，起点为-1
+     */
+    final int[] parents;
+    /**
+     * 节点类别
+     */
+    final byte[] categories;
+    /**
+     * 节点最后一次访问的搜索编号，不同则视为未访问
+     */
+    final int[] searchIds;
+    /**
+     * 索引对应节点
+     */
+    final N[] nodes;
+    /**
+     * 到达节点的连接
+     */
+    final Connection<N>[] connections;
+    final IntBinaryHeap openList;
+    int current;    //当前节点索引
+    /**
+     * The unique ID for each search run. Used to mark nodes.
+     */
+    private int searchId;
+
+    public FlatAStarPathFinder(IndexedGraph<N> graph) {
+        this(graph, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    public FlatAStarPathFinder(IndexedGraph<N> graph, boolean calculateMetrics) {
+        this.graph = graph;
+        this.csrGraph = graph instanceof CsrGraph ? (CsrGraph<N>) graph : null;
+        int nodeCount = graph.getNodeCount();
+        this.costSoFar = new float[nodeCount];
+        this.parents = new int[nodeCount];
+        this.categories = new byte[nodeCount];
+        this.searchIds = new int[nodeCount];
+        this.nodes = (N[]) new Object[nodeCount];
+        this.connections = (Connection<N>[]) new Connection[nodeCount];
+        this.openList = new IntBinaryHeap(nodeCount);
+        if (calculateMetrics) this.metrics = new IndexedAStarPathFinder.Metrics();
+    }
+
+    @Override
+    public boolean searchConnectionPath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<Connection<N>> outPath) {
+        if (startNode == null) {
+            LOGGER.debug("起点坐标不在寻路层中");
+            return false;
+        }
+
+        if (endNode == null) {
+            LOGGER.debug("终点坐标不在寻路层中");
+            return false;
+        }
+
+        boolean found = search(startNode, endNode, heuristic);
+
+        if (found) {
+            generateConnectionPath(outPath);
+        }
+
+        return found;
+    }
+
+    @Override
+    public boolean searchNodePath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<N> outPath) {
+
+        boolean found = search(startNode, endNode, heuristic);
+
+        if (found) {
+            generateNodePath(outPath);
+        }
+
+        return found;
+    }
+
+    @Override
+    public SearchStatus search(PathFinderRequest<N> request, int maxExpansions, long timeToRun) {
+        if (request.isDone()) {
+            return request.status;
+        }
+        long startTime = System.nanoTime();
+
+        // 请求不是本寻路器最近一次搜索，重新开始
+        if (!request.isSearching(this, searchId)) {
+            if (request.startNode == null || request.endNode == null) {
+                LOGGER.debug("起点或终点坐标不在寻路层中");
+                return request.finish(SearchStatus.FAILED);
+            }
+            initSearch(request.startNode, request.endNode, request.heuristic);
+            request.startSearch(this, searchId);
+        }
+
+        N endNode = request.endNode;
+        int endIndex = graph.getIndex(endNode);
+        int expansions = 0;
+        while (openList.size > 0) {
+            current = openList.pop();
+            categories[current] = CLOSED;
+
+            if (current == endIndex) {
+                request.resultPath.clear();
+                generateConnectionPath(request.resultPath);
+                return request.finish(SearchStatus.FOUND);
+            }
+
+            visitChildren(endNode, request.heuristic);
+            request.expandedNodes++;
+
+            if (maxExpansions > 0 && ++expansions >= maxExpansions) {
+                return SearchStatus.RUNNING;
+            }
+            if (timeToRun > 0 && System.nanoTime() - startTime >= timeToRun) {
+                return SearchStatus.RUNNING;
+            }
+        }
+
+        return request.finish(SearchStatus.FAILED);
+    }
+
+    /**
+     * 搜寻路径
+     *
+     * @param startNode
+     * @param endNode
+     * @param heuristic
+     * @return <code>true</code> 查找到路径
+     */
+    protected boolean search(N startNode, N endNode, Heuristic<N> heuristic) {
+
+        initSearch(startNode, endNode, heuristic);
+        int endIndex = graph.getIndex(endNode);
+
+        // 迭代开列表，依次从中取出消耗最小的节点，直到找到最终目的地或路径查询失败
+        do {
+            current = openList.pop();
+            categories[current] = CLOSED;
+
+            if (current == endIndex) return true;
+
+            visitChildren(endNode, heuristic);
+
+        } while (openList.size > 0);
+
+        return false;
+    }
+
+    /**
+     * 初始化查询
+     *
+     * @param startNode
+     * @param endNode
+     * @param heuristic
+     */
+    protected void initSearch(N startNode, N endNode, Heuristic<N> heuristic) {
+        if (metrics != null) metrics.reset();
+
+        // Increment the search id
+        if (++searchId < 0) searchId = 1;
+
+        openList.clear();
+
+        int startIndex = visit(startNode);
+        parents[startIndex] = -1;
+        connections[startIndex] = null;
+        costSoFar[startIndex] = 0;
+        addToOpenList(startIndex, heuristic.estimate(startNode, endNode));
+
+        current = -1;
+    }
+
+    /**
+     * 访问孩子节点
+     *
+     * @param endNode
+     * @param heuristic
+     */
+    protected void visitChildren(N endNode, Heuristic<N> heuristic) {
+        if (csrGraph != null) {
+            visitCsrChildren(endNode, heuristic);
+            return;
+        }
+        float currentCost = costSoFar[current];
+        List<Connection<N>> connections = graph.getConnections(nodes[current]);
+
+        for (int i = 0; i < connections.size(); i++) {
+            if (metrics != null) metrics.visitedNodes++;
+
+            Connection<N> connection = connections.get(i);
+
+            N node = connection.getToNode();    //周围目标节点
+            float nodeCost = currentCost + connection.getCost();
+
+            float nodeHeuristic;
+            int index = visit(node);
+            byte category = categories[index];
+            if (category == CLOSED) {
+                if (costSoFar[index] <= nodeCost) continue;
+
+                // 使用上次的预估值，不再调用启发函数
+                nodeHeuristic = openList.getValue(index) - costSoFar[index];
+            } else if (category == OPEN) {
+                if (costSoFar[index] <= nodeCost) continue;
+
+                openList.remove(index);
+                nodeHeuristic = openList.getValue(index) - costSoFar[index];
+            } else {
+                nodeHeuristic = heuristic.estimate(node, endNode);
+            }
+
+            costSoFar[index] = nodeCost;
+            parents[index] = current;
+            this.connections[index] = connection;
+
+            addToOpenList(index, nodeCost + nodeHeuristic);
+        }
+    }
+
+    /**
+     * 访问孩子节点，遍历CSR边数组
+     *
+     * @param endNode
+     * @param heuristic
+     */
+    private void visitCsrChildren(N endNode, Heuristic<N> heuristic) {
+        CsrGraph<N> csrGraph = this.csrGraph;
+        int[] targets = csrGraph.getTargets();
+        float[] costs = csrGraph.getCosts();
+        int[] offsets = csrGraph.getOffsets();
+        float currentCost = costSoFar[current];
+
+        for (int edge = offsets[current], end = offsets[current + 1]; edge < end; edge++) {
+            if (metrics != null) metrics.visitedNodes++;
+
+            int index = targets[edge];
+            float nodeCost = currentCost + costs[edge];
+
+            float nodeHeuristic;
+            if (searchIds[index] != searchId) {
+                searchIds[index] = searchId;
+                nodes[index] = csrGraph.getNode(index);
+                nodeHeuristic = heuristic.estimate(nodes[index], endNode);
+            } else if (categories[index] == CLOSED) {
+                if (costSoFar[index] <= nodeCost) continue;
+                nodeHeuristic = openList.getValue(index) - costSoFar[index];
+            } else if (categories[index] == OPEN) {
+                if (costSoFar[index] <= nodeCost) continue;
+                openList.remove(index);
+                nodeHeuristic = openList.getValue(index) - costSoFar[index];
+            } else {
+                nodeHeuristic = heuristic.estimate(nodes[index], endNode);
+            }
+
+            costSoFar[index] = nodeCost;
+            parents[index] = current;
+            connections[index] = csrGraph.getConnection(edge);
+
+            addToOpenList(index, nodeCost + nodeHeuristic);
+        }
+    }
+
+    /**
+     * 生成链接关系路径
+     *
+     * @param outPath
+     */
+    protected void generateConnectionPath(GraphPath<Connection<N>> outPath) {
+        int index = current;
+        while (parents[index] >= 0) {
+            outPath.add(connections[index]);
+            index = parents[index];
+        }
+        outPath.reverse();
+    }
+
+    /**
+     * 生成链接节点路径
+     *
+     * @param outPath
+     */
+    protected void generateNodePath(GraphPath<N> outPath) {
+        int index = current;
+        while (index >= 0) {
+            outPath.add(nodes[index]);
+            index = parents[index];
+        }
+        outPath.reverse();
+    }
+
+    /**
+     * 加入开列表
+     *
+     * @param index
+     * @param estimatedTotalCost 预估的消耗
+     */
+    protected void addToOpenList(int index, float estimatedTotalCost) {
+        openList.add(index, estimatedTotalCost);
+        categories[index] = OPEN;
+        if (metrics != null) {
+            metrics.openListAdditions++;
+            metrics.openListPeak = Math.max(metrics.openListPeak, openList.size);
+        }
+    }
+
+    /**
+     * 获取节点索引，本次搜索首次访问时重置节点类别
+     *
+     * @param node
+     * @return
+     */
+    protected int visit(N node) {
+        int index = graph.getIndex(node);
+        if (searchIds[index] != searchId) {
+            searchIds[index] = searchId;
+            categories[index] = UNVISITED;
+            nodes[index] = node;
+        }
+        return index;
+    }
+}
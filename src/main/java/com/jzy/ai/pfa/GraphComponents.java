@@ -0,0 +1,108 @@
+package com.jzy.ai.pfa;
+
+import java.util.Arrays;
+
+/**
+ * 图的连通区域
+ * <br>
+ * 构建图时计算每个节点所在的连通区域编号，不同区域的节点之间不存在路径，寻路前O(1)判断，
+ * 避免A*遍历整个可达区域后才返回失败。连接需为双向。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class GraphComponents {
+    /**
+     * 节点索引对应区域编号，无节点为-1
+     */
+    private final int[] components;
+    /**
+     * 区域包含的节点数
+     */
+    private final int[] sizes;
+
+    private GraphComponents(int[] components, int[] sizes) {
+        this.components = components;
+        this.sizes = sizes;
+    }
+
+    /**
+     * 计算连通区域
+     *
+     * @param graph
+     * @param <N>
+     * @return
+     */
+    public static <N> GraphComponents build(CsrGraph<N> graph) {
+        int nodeCount = graph.getNodeCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] components = new int[nodeCount];
+        Arrays.fill(components, -1);
+        int[] sizes = new int[Math.max(nodeCount, 1)];
+        int[] stack = new int[nodeCount];
+        int count = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (components[i] >= 0 || graph.getNode(i) == null) {
+                continue;
+            }
+            int component = count++;
+            int top = 0;
+            stack[top++] = i;
+            components[i] = component;
+            while (top > 0) {
+                int node = stack[--top];
+                sizes[component]++;
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int target = targets[edge];
+                    if (components[target] < 0) {
+                        components[target] = component;
+                        stack[top++] = target;
+                    }
+                }
+            }
+        }
+        return new GraphComponents(components, Arrays.copyOf(sizes, count));
+    }
+
+    /**
+     * 节点所在区域
+     *
+     * @param index 节点索引
+     * @return 区域编号，无节点为-1
+     */
+    public int getComponent(int index) {
+        return components[index];
+    }
+
+    /**
+     * 两节点是否连通
+     *
+     * @param fromIndex
+     * @param toIndex
+     * @return
+     */
+    public boolean isConnected(int fromIndex, int toIndex) {
+        int component = components[fromIndex];
+        return component >= 0 && component == components[toIndex];
+    }
+
+    /**
+     * 区域个数
+     *
+     * @return
+     */
+    public int getCount() {
+        return sizes.length;
+    }
+
+    /**
+     * 区域节点数
+     *
+     * @param component
+     * @return
+     */
+    public int getSize(int component) {
+        return sizes[component];
+    }
+}
@@ -96,6 +96,49 @@ public class IndexedAStarPathFinder<N> implements PathFinder<N> {
         return found;
     }
 
+    @Override
+    public SearchStatus search(PathFinderRequest<N> request, int maxExpansions, long timeToRun) {
+        if (request.isDone()) {
+            return request.status;
+        }
+        long startTime = System.nanoTime();
+
+        // 请求不是本寻路器最近一次搜索，重新开始
+        if (!request.isSearching(this, searchId)) {
+            if (request.startNode == null || request.endNode == null) {
+                LOGGER.debug("起点或终点坐标不在寻路层中");
+                return request.finish(SearchStatus.FAILED);
+            }
+            initSearch(request.startNode, request.endNode, request.heuristic);
+            request.startSearch(this, searchId);
+        }
+
+        N endNode = request.endNode;
+        int expansions = 0;
+        while (openList.size > 0) {
+            current = openList.pop();
+            current.category = CLOSED;
+
+            if (current.node == endNode) {
+                request.resultPath.clear();
+                generateConnectionPath(request.startNode, request.resultPath);
+                return request.finish(SearchStatus.FOUND);
+            }
+
+            visitChildren(endNode, request.heuristic);
+            request.expandedNodes++;
+
+            if (maxExpansions > 0 && ++expansions >= maxExpansions) {
+                return SearchStatus.RUNNING;
+            }
+            if (timeToRun > 0 && System.nanoTime() - startTime >= timeToRun) {
+                return SearchStatus.RUNNING;
+            }
+        }
+
+        return request.finish(SearchStatus.FAILED);
+    }
+
     /**
      * 搜寻路径
      *
@@ -0,0 +1,222 @@
+package com.jzy.ai.pfa;
+
+import java.util.Arrays;
+
+/**
+ * 整型索引二叉堆(最小堆)
+ * <br>
+ * 元素为 [0, capacity) 内的整数编号，排序值和堆中位置按编号存放在数组中，
+ * 支持 O(log n) 的插入、弹出、删除和修改排序值，使用过程中不产生对象。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class IntBinaryHeap {
+    public int size;
+    /**
+     * 堆数组，存储元素编号
+     */
+    private final int[] heap;
+    /**
+     * 元素编号对应的堆位置，-1表示不在堆中
+     */
+    private final int[] positions;
+    /**
+     * 元素编号对应的排序值
+     */
+    private final float[] values;
+
+    /**
+     * @param capacity 元素编号上限
+     */
+    public IntBinaryHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        values = new float[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * 添加元素，并设置排序值
+     *
+     * @param id    元素编号
+     * @param value 排序比较值
+     */
+    public void add(int id, float value) {
+        values[id] = value;
+        heap[size] = id;
+        positions[id] = size;
+        up(size++);
+    }
+
+    /**
+     * 获得堆最小值元素编号，并移除
+     *
+     * @return
+     */
+    public int pop() {
+        if (size == 0)
+            throw new IllegalStateException("The heap is empty.");
+        return removeAt(0);
+    }
+
+    /**
+     * 堆最小值元素编号
+     *
+     * @return
+     */
+    public int peek() {
+        if (size == 0)
+            throw new IllegalStateException("The heap is empty.");
+        return heap[0];
+    }
+
+    /**
+     * 移除元素
+     *
+     * @param id
+     * @return true 元素在堆中
+     */
+    public boolean remove(int id) {
+        int index = positions[id];
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * 设置元素排序值，并重新排序
+     *
+     * @param id
+     * @param value
+     */
+    public void setValue(int id, float value) {
+        int index = positions[id];
+        if (index < 0) {
+            add(id, value);
+            return;
+        }
+        float oldValue = values[id];
+        values[id] = value;
+        if (value < oldValue)
+            up(index);
+        else
+            down(index);
+    }
+
+    /**
+     * 元素排序值，元素出堆后保留最后一次设置的值
+     *
+     * @param id
+     * @return
+     */
+    public float getValue(int id) {
+        return values[id];
+    }
+
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private int removeAt(int index) {
+        int[] heap = this.heap;
+        int removed = heap[index];
+        positions[removed] = -1;
+        if (--size > index) {
+            int last = heap[size];
+            heap[index] = last;
+            positions[last] = index;
+            float lastValue = values[last];
+            if (index > 0 && lastValue < values[heap[(index - 1) >> 1]])
+                up(index);
+            else
+                down(index);
+        }
+        return removed;
+    }
+
+    /**
+     * 节点上移
+     *
+     * @param index
+     */
+    private void up(int index) {
+        int[] heap = this.heap;
+        int id = heap[index];
+        float value = values[id];
+        while (index > 0) {
+            int parentIndex = (index - 1) >> 1;
+            int parent = heap[parentIndex];
+            if (value < values[parent]) {
+                heap[index] = parent;
+                positions[parent] = index;
+                index = parentIndex;
+            } else
+                break;
+        }
+        heap[index] = id;
+        positions[id] = index;
+    }
+
+    /**
+     * 节点下移
+     *
+     * @param index
+     */
+    private void down(int index) {
+        int[] heap = this.heap;
+        int size = this.size;
+        int id = heap[index];
+        float value = values[id];
+
+        while (true) {
+            int leftIndex = 1 + (index << 1);
+            if (leftIndex >= size)
+                break;
+            int rightIndex = leftIndex + 1;
+            int child = heap[leftIndex];
+            int childIndex = leftIndex;
+            float childValue = values[child];
+            if (rightIndex < size) {
+                int right = heap[rightIndex];
+                float rightValue = values[right];
+                if (rightValue < childValue) {
+                    child = right;
+                    childIndex = rightIndex;
+                    childValue = rightValue;
+                }
+            }
+            if (childValue >= value)
+                break;
+            heap[index] = child;
+            positions[child] = index;
+            index = childIndex;
+        }
+        heap[index] = id;
+        positions[id] = index;
+    }
+
+    @Override
+    public String toString() {
+        if (size == 0)
+            return "[]";
+        StringBuilder buffer = new StringBuilder(32);
+        buffer.append('[');
+        buffer.append(values[heap[0]]);
+        for (int i = 1; i < size; i++) {
+            buffer.append(", ");
+            buffer.append(values[heap[i]]);
+        }
+        buffer.append(']');
+        return buffer.toString();
+    }
+}
@@ -49,4 +49,23 @@ public interface PathFinder<N> {
      */
     public boolean searchNodePath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<N> outPath);
 
+    /**
+     * 可中断查找连接关系
+     * <br>
+     * Performs an interruptible search, trying to find a path made up of
+     * connections from the start node to the goal node of the request. The search
+     * expands at most {@code maxExpansions} nodes or runs for at most
+     * {@code timeToRun} nanoseconds, then returns {@link SearchStatus#RUNNING};
+     * calling it again with the same request resumes from where it stopped.
+     *
+     * @param request       the search request, the result path is filled if a path is found
+     * @param maxExpansions 本次最多展开节点数，小于等于0不限制
+     * @param timeToRun     本次最多执行时间(纳秒)，小于等于0不限制
+     * @return 搜索状态
+     * @throws UnsupportedOperationException 寻路器不支持可中断搜索
+     */
+    public default SearchStatus search(PathFinderRequest<N> request, int maxExpansions, long timeToRun) {
+        throw new UnsupportedOperationException("interruptible search not supported by " + getClass().getSimpleName());
+    }
+
 }
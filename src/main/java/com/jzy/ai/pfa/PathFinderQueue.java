@@ -0,0 +1,102 @@
+package com.jzy.ai.pfa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 分帧寻路队列
+ * <br>
+ * 多个对象提交的寻路请求排队执行，每帧调用 {@link #run(long)} 在给定时间预算内推进，
+ * 未完成的请求保留在队首下一帧继续，避免长距离寻路造成逻辑帧卡顿。
+ * <p>
+ * 非线程安全，在逻辑线程中提交和执行。
+ *
+ * @param <N> Type of node
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PathFinderQueue<N> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PathFinderQueue.class);
+    /**
+     * 专用寻路器
+     */
+    private final PathFinder<N> pathFinder;
+    private final Deque<PathFinderRequest<N>> requests = new ArrayDeque<>();
+
+    /**
+     * @param pathFinder 专用寻路器，不能同时用于其他搜索，否则当前请求会重新开始
+     */
+    public PathFinderQueue(PathFinder<N> pathFinder) {
+        this.pathFinder = pathFinder;
+    }
+
+    /**
+     * 提交请求
+     *
+     * @param request
+     */
+    public void add(PathFinderRequest<N> request) {
+        request.reset();
+        requests.add(request);
+    }
+
+    /**
+     * 执行寻路
+     *
+     * @param timeToRun 本帧时间预算(纳秒)
+     * @return 本帧完成的请求数
+     */
+    public int run(long timeToRun) {
+        long deadline = System.nanoTime() + timeToRun;
+        int completed = 0;
+        while (!requests.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PathFinderRequest<N> request = requests.peek();
+            if (request.cancelled) {
+                requests.poll();
+                continue;
+            }
+            request.executionFrames++;
+            SearchStatus status = pathFinder.search(request, 0, remaining);
+            if (status == SearchStatus.RUNNING) {
+                break;
+            }
+            requests.poll();
+            completed++;
+            if (request.callback != null) {
+                try {
+                    request.callback.onComplete(request);
+                } catch (Exception e) {
+                    LOGGER.error("寻路回调异常", e);
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 等待中的请求数，包含正在执行的请求
+     *
+     * @return
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    public boolean isEmpty() {
+        return requests.isEmpty();
+    }
+
+    /**
+     * 清除所有请求
+     */
+    public void clear() {
+        requests.clear();
+    }
+}
@@ -0,0 +1,137 @@
+package com.jzy.ai.pfa;
+
+/**
+ * 可中断寻路请求
+ * <br>
+ * 保存一次分帧寻路的参数、结果和状态，由 {@link PathFinder#search(PathFinderRequest, int, long)} 推进，
+ * 或提交到 {@link PathFinderQueue} 按帧调度。
+ *
+ * @param <N> Type of node
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PathFinderRequest<N> {
+    public N startNode;
+    public N endNode;
+    public Heuristic<N> heuristic;
+    /**
+     * 结果路径，找到路径时填充
+     */
+    public GraphPath<Connection<N>> resultPath;
+    /**
+     * 完成回调，可为null
+     */
+    public Callback<N> callback;
+    /**
+     * 当前状态
+     */
+    public SearchStatus status = SearchStatus.RUNNING;
+    /**
+     * 已展开节点数
+     */
+    public int expandedNodes;
+    /**
+     * 执行的次数(帧数)
+     */
+    public int executionFrames;
+    /**
+     * 是否已取消
+     */
+    public boolean cancelled;
+    /**
+     * 正在执行搜索的寻路器，寻路器切换或执行过其他搜索时需重新开始
+     */
+    Object searchOwner;
+    /**
+     * 寻路器中的搜索编号
+     */
+    int searchId;
+
+    public PathFinderRequest() {
+    }
+
+    public PathFinderRequest(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<Connection<N>> resultPath) {
+        this(startNode, endNode, heuristic, resultPath, null);
+    }
+
+    public PathFinderRequest(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<Connection<N>> resultPath,
+                             Callback<N> callback) {
+        this.startNode = startNode;
+        this.endNode = endNode;
+        this.heuristic = heuristic;
+        this.resultPath = resultPath;
+        this.callback = callback;
+    }
+
+    /**
+     * 寻路器是否可以继续上次的搜索
+     *
+     * @param pathFinder
+     * @param searchId   寻路器当前的搜索编号
+     * @return
+     */
+    boolean isSearching(Object pathFinder, int searchId) {
+        return status == SearchStatus.RUNNING && searchOwner == pathFinder && this.searchId == searchId;
+    }
+
+    /**
+     * 标记搜索开始
+     *
+     * @param pathFinder
+     * @param searchId
+     */
+    void startSearch(Object pathFinder, int searchId) {
+        this.searchOwner = pathFinder;
+        this.searchId = searchId;
+        this.expandedNodes = 0;
+    }
+
+    /**
+     * 结束搜索
+     *
+     * @param status
+     * @return
+     */
+    SearchStatus finish(SearchStatus status) {
+        this.status = status;
+        this.searchOwner = null;
+        return status;
+    }
+
+    /**
+     * 是否结束
+     *
+     * @return
+     */
+    public boolean isDone() {
+        return status != SearchStatus.RUNNING;
+    }
+
+    /**
+     * 重置请求，重新查询
+     */
+    public void reset() {
+        status = SearchStatus.RUNNING;
+        expandedNodes = 0;
+        executionFrames = 0;
+        cancelled = false;
+        searchOwner = null;
+        if (resultPath != null) {
+            resultPath.clear();
+        }
+    }
+
+    /**
+     * 寻路完成回调
+     *
+     * @param <N>
+     */
+    public interface Callback<N> {
+        /**
+         * 寻路结束，状态为 {@link SearchStatus#FOUND} 或 {@link SearchStatus#FAILED}
+         *
+         * @param request
+         */
+        void onComplete(PathFinderRequest<N> request);
+    }
+}
@@ -0,0 +1,35 @@
+package com.jzy.ai.pfa;
+
+/**
+ * 寻路引擎类型
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public enum PathFinderType {
+    /**
+     * {@link IndexedAStarPathFinder}，每个节点一个记录对象
+     */
+    INDEXED_A_STAR,
+    /**
+     * {@link FlatAStarPathFinder}，搜索数据存放在基本类型数组中，寻路不分配对象
+     */
+    FLAT_A_STAR;
+
+    /**
+     * 创建寻路器
+     *
+     * @param graph 图数据
+     * @param <N>   Type of node
+     * @return
+     */
+    public <N> PathFinder<N> create(IndexedGraph<N> graph) {
+        switch (this) {
+            case FLAT_A_STAR:
+                return new FlatAStarPathFinder<>(graph);
+            case INDEXED_A_STAR:
+            default:
+                return new IndexedAStarPathFinder<>(graph);
+        }
+    }
+}
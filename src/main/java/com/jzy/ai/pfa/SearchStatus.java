@@ -0,0 +1,22 @@
+package com.jzy.ai.pfa;
+
+/**
+ * 可中断寻路状态
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public enum SearchStatus {
+    /**
+     * 本次预算用完，尚未结束，下次调用继续
+     */
+    RUNNING,
+    /**
+     * 找到路径
+     */
+    FOUND,
+    /**
+     * 无路径
+     */
+    FAILED
+}
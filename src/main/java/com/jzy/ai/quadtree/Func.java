@@ -2,6 +2,7 @@ package com.jzy.ai.quadtree;
 
 
 import com.jzy.ai.nav.polygon.Polygon;
+import com.jzy.ai.quadtree.point.PointQuadTree;
 import com.jzy.ai.quadtree.polygon.PolygonGuadTree;
 
 /**
@@ -12,9 +13,9 @@ import com.jzy.ai.quadtree.polygon.PolygonGuadTree;
  * @mail 359135103@qq.com
  */
 public interface Func<V> {
-//	public default void call(PointQuadTree<V> quadTree, Node<V> node) {
-//		
-//	}
+    public default void call(PointQuadTree<V> quadTree, Node<V> node) {
+
+    }
 
     public default void call(PolygonGuadTree quadTree, Node<Polygon> node) {
 
@@ -36,6 +36,19 @@ public class Node<T> {
     }
 
     public Node(float x, float z, float w, float h, Node<T> parent, int depth) {
+        this(x, z, w, h, parent, depth, true);
+    }
+
+    /**
+     * @param x
+     * @param z
+     * @param w
+     * @param h
+     * @param parent
+     * @param depth
+     * @param createPolygon 是否创建节点矩形多边形，只做坐标点比较的四叉树不需要
+     */
+    public Node(float x, float z, float w, float h, Node<T> parent, int depth, boolean createPolygon) {
         super();
         this.x = x;
         this.z = z;
@@ -43,8 +56,10 @@ public class Node<T> {
         this.h = h;
         this.parent = parent;
         this.depth = depth;
-        this.polygon = new Polygon(0, new Vector3(x, z), new Vector3(x, z + h), new Vector3(x + w, z + h),
-                new Vector3(x + w, z));
+        if (createPolygon) {
+            this.polygon = new Polygon(0, new Vector3(x, z), new Vector3(x, z + h), new Vector3(x + w, z + h),
+                    new Vector3(x + w, z));
+        }
     }
 
     public float getX() {
@@ -154,6 +169,11 @@ public class Node<T> {
         this.depth = depth;
     }
 
+    /**
+     * 节点矩形多边形
+     *
+     * @return 未创建返回null
+     */
     public Polygon getPolygon() {
         return polygon;
     }
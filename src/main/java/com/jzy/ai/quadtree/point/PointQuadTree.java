@@ -0,0 +1,694 @@
+package com.jzy.ai.quadtree.point;
+
+import com.jzy.ai.quadtree.Data;
+import com.jzy.ai.quadtree.Func;
+import com.jzy.ai.quadtree.Node;
+import com.jzy.ai.quadtree.NodeType;
+import com.jzy.ai.quadtree.QuadTree;
+import com.jzy.ai.quadtree.QuadTreeException;
+import com.jzy.ai.quadtree.point.PointQuadTreeSnapshot.Cell;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 坐标点四叉树，用于移动的玩家、怪物等对象 <br>
+ * 按x、z坐标插入，一个值对应一个坐标，值作为对象的唯一标识
+ * <p>
+ * 叶子节点超过容量时拆分，删除后兄弟节点总数低于容量一半时合并回父节点，长时间运行不会退化。
+ * 移动对象时仍在原叶子节点内只修改坐标，跨越节点才删除再插入。插入、删除、移动均为O(深度)。
+ * <p>
+ * 保存坐标副本，外部修改坐标对象后需调用 {@link #move(Object, Vector3)}。
+ * <p>
+ * 非线程安全，只能在一个线程(场景线程)中修改和查询。其他线程通过快照查询：场景线程每帧修改完成后调用
+ * {@link #publish()}，其他线程调用 {@link #getSnapshot()} 取得最近发布的只读快照，无需加锁。
+ * 快照与四叉树共用同一套查询实现。
+ *
+ * @param <V> 值
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public class PointQuadTree<V> extends QuadTree<Vector3, V> {
+    /**
+     * 最大深度
+     */
+    private final int depth;
+    /**
+     * 叶子节点容量
+     */
+    private final int items;
+    /**
+     * 值对应的数据，数据记录所在叶子节点
+     */
+    private final Map<V, Entry<V>> entries = new HashMap<>();
+    /**
+     * 最近发布的快照
+     */
+    private volatile PointQuadTreeSnapshot<V> snapshot;
+    /**
+     * 节点发布的快照节点，节点修改后删除自身及祖先的快照节点，发布时只重建这些节点
+     * <p>
+     * 节点没有快照节点时，其祖先也没有
+     */
+    private final Map<Node<V>, Cell<V>> cells = new IdentityHashMap<>();
+    private final NodeSearch<V> search = new NodeSearch<>();
+
+    public PointQuadTree(float minX, float minZ, float maxX, float maxZ) {
+        this(minX, minZ, maxX, maxZ, 8, 8);
+    }
+
+    /**
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param depth 最大深度
+     * @param items 叶子节点容量
+     */
+    public PointQuadTree(float minX, float minZ, float maxX, float maxZ, int depth, int items) {
+        super(minX, minZ, maxX, maxZ);
+        this.root = new Node<>(minX, minZ, maxX - minX, maxZ - minZ, null, 0, false);
+        this.depth = depth;
+        this.items = Math.max(1, items);
+        this.snapshot = new PointQuadTreeSnapshot<>(cell(root), 0, 0);
+    }
+
+    /**
+     * 插入值，值已存在时移动到新坐标
+     */
+    @Override
+    public void set(Vector3 k, V v) {
+        Entry<V> entry = entries.get(v);
+        if (entry != null) {
+            move(entry, k.x, k.y, k.z);
+            return;
+        }
+        checkBounds(k.x, k.z);
+        entry = new Entry<>(new Vector3(k.x, k.y, k.z), v);
+        entries.put(v, entry);
+        insert(root, entry);
+        count++;
+    }
+
+    /**
+     * 获取坐标点上的值，x、z坐标相同
+     */
+    @Override
+    public V get(Vector3 k, V defaultValue) {
+        Entry<V> entry = findEntry(k);
+        return entry == null ? defaultValue : entry.getValue();
+    }
+
+    /**
+     * 坐标点所在的叶子节点
+     *
+     * @param node 开始查找的节点
+     * @param k
+     * @return 节点为空返回null
+     */
+    @Override
+    public Node<V> find(Node<V> node, Vector3 k) {
+        Node<V> leaf = getLeaf(node, k.x, k.z);
+        return leaf.getNodeType() == NodeType.LEAF ? leaf : null;
+    }
+
+    /**
+     * 删除坐标点上的一个值
+     */
+    @Override
+    public V remove(Vector3 k) {
+        Entry<V> entry = findEntry(k);
+        if (entry == null) {
+            return null;
+        }
+        V value = entry.getValue();
+        entries.remove(value);
+        detach(entry);
+        count--;
+        return value;
+    }
+
+    /**
+     * 删除值
+     *
+     * @param v
+     * @return 值不存在返回false
+     */
+    public boolean removeValue(V v) {
+        Entry<V> entry = entries.remove(v);
+        if (entry == null) {
+            return false;
+        }
+        detach(entry);
+        count--;
+        return true;
+    }
+
+    /**
+     * 移动值到新坐标
+     *
+     * @param v
+     * @param position
+     * @return 值不存在返回false
+     */
+    public boolean move(V v, Vector3 position) {
+        Entry<V> entry = entries.get(v);
+        if (entry == null) {
+            return false;
+        }
+        move(entry, position.x, position.y, position.z);
+        return true;
+    }
+
+    private void move(Entry<V> entry, float x, float y, float z) {
+        checkBounds(x, z);
+        Vector3 point = entry.getPoint();
+        if (point.x == x && point.y == y && point.z == z) {
+            return;
+        }
+        Node<V> leaf = getLeaf(root, x, z);
+        if (leaf == entry.node) {
+            dirty(leaf);
+            point.set(x, y, z);
+            return;
+        }
+        detach(entry);
+        entry.getPoint().set(x, y, z);
+        insert(root, entry);
+    }
+
+    /**
+     * 值的坐标
+     *
+     * @param v
+     * @return 值不存在返回null，请勿修改
+     */
+    public Vector3 getPosition(V v) {
+        Entry<V> entry = entries.get(v);
+        return entry == null ? null : entry.getPoint();
+    }
+
+    /**
+     * 是否包含值
+     *
+     * @param v
+     * @return
+     */
+    public boolean containsValue(V v) {
+        return entries.containsKey(v);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getKeyValues() {
+        List<T> list = new ArrayList<>(count);
+        for (Entry<V> entry : entries.values()) {
+            list.add((T) entry);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Vector3> getKeys() {
+        List<Vector3> list = new ArrayList<>(count);
+        for (Entry<V> entry : entries.values()) {
+            list.add(entry.getPoint());
+        }
+        return list;
+    }
+
+    @Override
+    public List<V> getValues() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        this.root.setDatas(null);
+        entries.clear();
+        cells.clear();
+    }
+
+    /**
+     * 遍历所有叶子节点
+     *
+     * @param func
+     */
+    public void navigate(Func<V> func) {
+        navigate(root, func);
+    }
+
+    private void navigate(Node<V> node, Func<V> func) {
+        switch (node.getNodeType()) {
+            case LEAF:
+                func.call(this, node);
+                break;
+            case POINTER:
+                navigate(node.getNw(), func);
+                navigate(node.getNe(), func);
+                navigate(node.getSw(), func);
+                navigate(node.getSe(), func);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 发布快照，只能在修改四叉树的线程中调用，一般每帧修改完成后调用一次
+     * <p>
+     * 只复制上次发布后修改过的节点及其祖先，O(修改的叶子节点数*深度+其中的值个数)，未修改的子树与旧快照共用。
+     * 已取得旧快照的线程不受影响。上次发布后未修改时直接返回当前快照。
+     *
+     * @return 最新快照
+     */
+    public PointQuadTreeSnapshot<V> publish() {
+        if (cells.containsKey(root)) {
+            return snapshot;
+        }
+        PointQuadTreeSnapshot<V> published = new PointQuadTreeSnapshot<>(cell(root), count,
+                snapshot.getVersion() + 1);
+        this.snapshot = published;
+        return published;
+    }
+
+    /**
+     * 节点的快照节点，未修改时复用上次发布的
+     */
+    private Cell<V> cell(Node<V> node) {
+        Cell<V> cell = cells.get(node);
+        if (cell != null) {
+            return cell;
+        }
+        if (node.getNodeType() == NodeType.POINTER) {
+            cell = new Cell<>(node.getX(), node.getZ(), node.getW(), node.getH(), cell(node.getNw()),
+                    cell(node.getNe()), cell(node.getSw()), cell(node.getSe()));
+        } else {
+            int size = node.getNodeType() == NodeType.LEAF ? node.getDatas().size() : 0;
+            float[] points = new float[size * 3];
+            Object[] values = new Object[size];
+            for (int i = 0; i < size; i++) {
+                Entry<V> entry = (Entry<V>) node.getDatas().get(i);
+                Vector3 point = entry.getPoint();
+                points[i * 3] = point.x;
+                points[i * 3 + 1] = point.y;
+                points[i * 3 + 2] = point.z;
+                values[i] = entry.getValue();
+            }
+            cell = new Cell<>(node.getX(), node.getZ(), node.getW(), node.getH(), points, values);
+        }
+        cells.put(node, cell);
+        return cell;
+    }
+
+    /**
+     * 节点修改，删除节点及祖先的快照节点，下次发布时重建
+     */
+    private void dirty(Node<V> node) {
+        while (node != null && cells.remove(node) != null) {
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * 最近发布的快照，任意线程可调用
+     *
+     * @return
+     */
+    public PointQuadTreeSnapshot<V> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 矩形范围查询
+     *
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param visitor 返回false停止查询
+     * @return 访问的个数
+     */
+    public int queryRect(float minX, float minZ, float maxX, float maxZ, PointVisitor<V> visitor) {
+        return search.queryRect(root, minX, minZ, maxX, maxZ, visitor, null);
+    }
+
+    /**
+     * 矩形范围查询
+     *
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param out  输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int queryRect(float minX, float minZ, float maxX, float maxZ, V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.queryRect(root, minX, minZ, maxX, maxZ, null, out);
+    }
+
+    /**
+     * 圆形范围查询，忽略高度
+     *
+     * @param center
+     * @param radius
+     * @param visitor 返回false停止查询
+     * @return 访问的个数
+     */
+    public int queryCircle(Vector3 center, float radius, PointVisitor<V> visitor) {
+        return search.queryCircle(root, center, radius, visitor, null);
+    }
+
+    /**
+     * 圆形范围查询，忽略高度
+     *
+     * @param center
+     * @param radius
+     * @param out    输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int queryCircle(Vector3 center, float radius, V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.queryCircle(root, center, radius, null, out);
+    }
+
+    /**
+     * 扇形范围查询，与 PolygonNavMesh.getSector 参数一致，按精确圆弧判断，忽略高度
+     *
+     * @param position        当前位置，一般为玩家坐标
+     * @param sourceDirection 朝向，unity旋转角度，y为绕y轴角度
+     * @param distance        扇形起点到当前位置的距离
+     * @param radius          扇形半径
+     * @param degrees         扇形角度
+     * @param visitor         返回false停止查询
+     * @return 访问的个数
+     */
+    public int querySector(Vector3 position, Vector3 sourceDirection, float distance, float radius, float degrees,
+                           PointVisitor<V> visitor) {
+        return search.querySector(root, position, sourceDirection, distance, radius, degrees, visitor, null);
+    }
+
+    /**
+     * 扇形范围查询
+     *
+     * @param position        当前位置，一般为玩家坐标
+     * @param sourceDirection 朝向，unity旋转角度，y为绕y轴角度
+     * @param distance        扇形起点到当前位置的距离
+     * @param radius          扇形半径
+     * @param degrees         扇形角度
+     * @param out             输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int querySector(Vector3 position, Vector3 sourceDirection, float distance, float radius, float degrees,
+                           V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.querySector(root, position, sourceDirection, distance, radius, degrees, null, out);
+    }
+
+    /**
+     * 最近的值，忽略高度
+     *
+     * @param point
+     * @param filter 过滤条件，可为null
+     * @return 没有满足条件的值返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V nearest(Vector3 point, Predicate<V> filter) {
+        Object[] out = new Object[1];
+        return nearest(point, 1, Float.MAX_VALUE, filter, (V[]) out) > 0 ? (V) out[0] : null;
+    }
+
+    /**
+     * 最近的k个值，忽略高度
+     *
+     * @param point
+     * @param k
+     * @param filter 过滤条件，可为null
+     * @param out    输出，按距离由近到远
+     * @return 查询到的个数
+     */
+    public int nearest(Vector3 point, int k, Predicate<V> filter, V[] out) {
+        return nearest(point, k, Float.MAX_VALUE, filter, out);
+    }
+
+    /**
+     * 最近的k个值，忽略高度
+     * <p>
+     * 按节点矩形到查询点的最近距离由近到远访问节点，已找到k个值后，节点距离超过第k近的距离即停止。
+     * 过滤条件在遍历时判断，只对距离可能进入结果的值调用。
+     *
+     * @param point
+     * @param k
+     * @param maxDistance 最大距离
+     * @param filter      过滤条件，可为null
+     * @param out         输出，按距离由近到远
+     * @return 查询到的个数
+     */
+    public int nearest(Vector3 point, int k, float maxDistance, Predicate<V> filter, V[] out) {
+        return search.nearest(root, point, k, maxDistance, filter, out);
+    }
+
+    private void checkBounds(float x, float z) {
+        Node<V> r = this.root;
+        if (x < r.getX() || z < r.getZ() || x > r.getX() + r.getW() || z > r.getZ() + r.getH()) {
+            throw new QuadTreeException(String.format("坐标越界:(%f,%f),范围(%f,%f)-->(%f,%f)", x, z, r.getX(), r.getZ(),
+                    r.getX() + r.getW(), r.getZ() + r.getH()));
+        }
+    }
+
+    private Entry<V> findEntry(Vector3 k) {
+        Node<V> leaf = getLeaf(root, k.x, k.z);
+        if (leaf.getNodeType() != NodeType.LEAF) {
+            return null;
+        }
+        for (Data<V> data : leaf.getDatas()) {
+            Vector3 point = ((Entry<V>) data).getPoint();
+            if (point.x == k.x && point.z == k.z) {
+                return (Entry<V>) data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 坐标点所在的叶子或空节点
+     */
+    private Node<V> getLeaf(Node<V> node, float x, float z) {
+        while (node.getNodeType() == NodeType.POINTER) {
+            node = getQuadrantForPoint(node, x, z);
+        }
+        return node;
+    }
+
+    private void insert(Node<V> node, Entry<V> entry) {
+        Vector3 point = entry.getPoint();
+        node = getLeaf(node, point.x, point.z);
+        // 拆分产生的子节点没有快照节点，先标记原叶子节点
+        dirty(node);
+        while (node.getNodeType() == NodeType.LEAF && node.getDatas().size() >= items && node.getDepth() < depth) {
+            split(node);
+            node = getQuadrantForPoint(node, point.x, point.z);
+        }
+        node.setNodeType(NodeType.LEAF);
+        node.getDatas().add(entry);
+        entry.node = node;
+    }
+
+    /**
+     * 从叶子节点移除，节点为空或兄弟节点总数不足时合并
+     */
+    private void detach(Entry<V> entry) {
+        Node<V> node = entry.node;
+        entry.node = null;
+        dirty(node);
+        List<Data<V>> datas = node.getDatas();
+        datas.remove(entry);
+        if (datas.isEmpty()) {
+            node.setNodeType(NodeType.EMPTY);
+        }
+        Node<V> parent = node.getParent();
+        while (parent != null && tryMerge(parent)) {
+            parent = parent.getParent();
+        }
+    }
+
+    /**
+     * 子节点都不是指针节点且数据总数不超过容量一半时合并到父节点
+     */
+    private boolean tryMerge(Node<V> parent) {
+        int total = 0;
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            Node<V> child = child(parent, quadrant);
+            if (child.getNodeType() == NodeType.POINTER) {
+                return false;
+            }
+            if (child.getNodeType() == NodeType.LEAF) {
+                total += child.getDatas().size();
+            }
+        }
+        if (total > items / 2) {
+            return false;
+        }
+        List<Data<V>> datas = new ArrayList<>(Math.max(items, total));
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            Node<V> child = child(parent, quadrant);
+            if (child.getNodeType() == NodeType.LEAF) {
+                for (Data<V> data : child.getDatas()) {
+                    ((Entry<V>) data).node = parent;
+                    datas.add(data);
+                }
+            }
+        }
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            cells.remove(child(parent, quadrant));
+        }
+        parent.setNw(null);
+        parent.setNe(null);
+        parent.setSw(null);
+        parent.setSe(null);
+        parent.setDatas(datas);
+        parent.setNodeType(datas.isEmpty() ? NodeType.EMPTY : NodeType.LEAF);
+        return true;
+    }
+
+    /**
+     * 子节点，按nw、ne、sw、se顺序，避免遍历时创建数组
+     */
+    private static <V> Node<V> child(Node<V> node, int quadrant) {
+        switch (quadrant) {
+            case 0:
+                return node.getNw();
+            case 1:
+                return node.getNe();
+            case 2:
+                return node.getSw();
+            default:
+                return node.getSe();
+        }
+    }
+
+    /**
+     * 拆分节点，数据按坐标分配到子节点
+     */
+    private void split(Node<V> node) {
+        List<Data<V>> datas = node.getDatas();
+        node.setDatas(null);
+        node.setNodeType(NodeType.POINTER);
+        float x = node.getX();
+        float z = node.getZ();
+        float hw = node.getW() / 2;
+        float hh = node.getH() / 2;
+        int depth = node.getDepth() + 1;
+
+        node.setNw(new Node<>(x, z, hw, hh, node, depth, false));
+        node.setNe(new Node<>(x + hw, z, hw, hh, node, depth, false));
+        node.setSw(new Node<>(x, z + hh, hw, hh, node, depth, false));
+        node.setSe(new Node<>(x + hw, z + hh, hw, hh, node, depth, false));
+
+        for (Data<V> data : datas) {
+            Entry<V> entry = (Entry<V>) data;
+            Node<V> child = getQuadrantForPoint(node, entry.getPoint().x, entry.getPoint().z);
+            child.setNodeType(NodeType.LEAF);
+            child.getDatas().add(entry);
+            entry.node = child;
+        }
+    }
+
+    /**
+     * 坐标点所在的子节点
+     */
+    protected Node<V> getQuadrantForPoint(Node<V> parent, float x, float z) {
+        float mx = parent.getX() + parent.getW() / 2;
+        float mz = parent.getZ() + parent.getH() / 2;
+        if (x < mx) {
+            return z < mz ? parent.getNw() : parent.getSw();
+        } else {
+            return z < mz ? parent.getNe() : parent.getSe();
+        }
+    }
+
+    /**
+     * 带所在叶子节点的坐标点数据
+     */
+    private static final class Entry<V> extends PointData<V> {
+        private Node<V> node;
+
+        private Entry(Vector3 point, V value) {
+            super(point, value);
+        }
+    }
+
+    /**
+     * 四叉树节点查询
+     */
+    private static final class NodeSearch<V> extends PointSearch<V, Node<V>> {
+        @Override
+        float x(Node<V> node) {
+            return node.getX();
+        }
+
+        @Override
+        float z(Node<V> node) {
+            return node.getZ();
+        }
+
+        @Override
+        float w(Node<V> node) {
+            return node.getW();
+        }
+
+        @Override
+        float h(Node<V> node) {
+            return node.getH();
+        }
+
+        @Override
+        boolean isPointer(Node<V> node) {
+            return node.getNodeType() == NodeType.POINTER;
+        }
+
+        @Override
+        Node<V> child(Node<V> node, int quadrant) {
+            return PointQuadTree.child(node, quadrant);
+        }
+
+        @Override
+        int size(Node<V> node) {
+            // 空节点不调用getDatas，避免创建列表
+            return node.getNodeType() == NodeType.LEAF ? node.getDatas().size() : 0;
+        }
+
+        @Override
+        float pointX(Node<V> node, int i) {
+            return point(node, i).x;
+        }
+
+        @Override
+        float pointZ(Node<V> node, int i) {
+            return point(node, i).z;
+        }
+
+        @Override
+        V value(Node<V> node, int i) {
+            return node.getDatas().get(i).getValue();
+        }
+
+        @Override
+        Vector3 point(Node<V> node, int i) {
+            return ((PointData<V>) node.getDatas().get(i)).getPoint();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.jzy.ai.quadtree.point;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.function.Predicate;
+
+/**
+ * 坐标点四叉树快照，由 {@link PointQuadTree#publish()} 生成，只读
+ * <p>
+ * 快照由只读节点({@link Cell})组成，发布时只重建上次发布后修改过的节点及其祖先，未修改的子树与上一个快照共用。
+ * 节点构建完成后不再修改，可多线程无锁共享。查询与 {@link PointQuadTree} 共用同一实现。
+ * <p>
+ * 一致性：快照中的所有坐标为发布时刻四叉树的状态，不会读到发布前后混合的数据；
+ * 相对场景线程最多滞后一次发布(一帧)。值对象只复制引用，值本身的线程安全由调用者保证。
+ *
+ * @param <V> 值
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class PointQuadTreeSnapshot<V> {
+    private static final CellSearch<Object> SEARCH = new CellSearch<>();
+    /**
+     * 版本号，每次发布加1
+     */
+    private final long version;
+    /**
+     * 根节点
+     */
+    private final Cell<V> root;
+    /**
+     * 值的个数
+     */
+    private final int size;
+    private final CellSearch<V> search;
+
+    @SuppressWarnings("unchecked")
+    PointQuadTreeSnapshot(Cell<V> root, int size, long version) {
+        this.version = version;
+        this.size = size;
+        this.root = root;
+        this.search = (CellSearch<V>) (CellSearch<?>) SEARCH;
+    }
+
+    /**
+     * 版本号，每次发布加1
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 值的个数
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 矩形范围查询
+     *
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param visitor 返回false停止查询，回调的坐标对象为新建的副本
+     * @return 访问的个数
+     */
+    public int queryRect(float minX, float minZ, float maxX, float maxZ, PointVisitor<V> visitor) {
+        return search.queryRect(root, minX, minZ, maxX, maxZ, visitor, null);
+    }
+
+    /**
+     * 矩形范围查询
+     *
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param out  输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int queryRect(float minX, float minZ, float maxX, float maxZ, V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.queryRect(root, minX, minZ, maxX, maxZ, null, out);
+    }
+
+    /**
+     * 圆形范围查询，忽略高度
+     *
+     * @param center
+     * @param radius
+     * @param visitor 返回false停止查询，回调的坐标对象为新建的副本
+     * @return 访问的个数
+     */
+    public int queryCircle(Vector3 center, float radius, PointVisitor<V> visitor) {
+        return search.queryCircle(root, center, radius, visitor, null);
+    }
+
+    /**
+     * 圆形范围查询，忽略高度
+     *
+     * @param center
+     * @param radius
+     * @param out    输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int queryCircle(Vector3 center, float radius, V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.queryCircle(root, center, radius, null, out);
+    }
+
+    /**
+     * 扇形范围查询，参数与 {@link PointQuadTree#querySector(Vector3, Vector3, float, float, float, PointVisitor)} 一致
+     *
+     * @param position        当前位置，一般为玩家坐标
+     * @param sourceDirection 朝向，unity旋转角度，y为绕y轴角度
+     * @param distance        扇形起点到当前位置的距离
+     * @param radius          扇形半径
+     * @param degrees         扇形角度
+     * @param visitor         返回false停止查询，回调的坐标对象为新建的副本
+     * @return 访问的个数
+     */
+    public int querySector(Vector3 position, Vector3 sourceDirection, float distance, float radius, float degrees,
+                           PointVisitor<V> visitor) {
+        return search.querySector(root, position, sourceDirection, distance, radius, degrees, visitor, null);
+    }
+
+    /**
+     * 扇形范围查询
+     *
+     * @param position        当前位置，一般为玩家坐标
+     * @param sourceDirection 朝向，unity旋转角度，y为绕y轴角度
+     * @param distance        扇形起点到当前位置的距离
+     * @param radius          扇形半径
+     * @param degrees         扇形角度
+     * @param out             输出，装满后停止查询
+     * @return 查询到的个数
+     */
+    public int querySector(Vector3 position, Vector3 sourceDirection, float distance, float radius, float degrees,
+                           V[] out) {
+        if (out.length == 0) {
+            return 0;
+        }
+        return search.querySector(root, position, sourceDirection, distance, radius, degrees, null, out);
+    }
+
+    /**
+     * 最近的值，忽略高度
+     *
+     * @param point
+     * @param filter 过滤条件，可为null
+     * @return 没有满足条件的值返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V nearest(Vector3 point, Predicate<V> filter) {
+        Object[] out = new Object[1];
+        return nearest(point, 1, Float.MAX_VALUE, filter, (V[]) out) > 0 ? (V) out[0] : null;
+    }
+
+    /**
+     * 最近的k个值，忽略高度
+     *
+     * @param point
+     * @param k
+     * @param filter 过滤条件，可为null
+     * @param out    输出，按距离由近到远
+     * @return 查询到的个数
+     */
+    public int nearest(Vector3 point, int k, Predicate<V> filter, V[] out) {
+        return nearest(point, k, Float.MAX_VALUE, filter, out);
+    }
+
+    /**
+     * 最近的k个值，忽略高度，与 {@link PointQuadTree#nearest(Vector3, int, float, Predicate, Object[])} 一致
+     *
+     * @param point
+     * @param k
+     * @param maxDistance 最大距离
+     * @param filter      过滤条件，可为null
+     * @param out         输出，按距离由近到远
+     * @return 查询到的个数
+     */
+    public int nearest(Vector3 point, int k, float maxDistance, Predicate<V> filter, V[] out) {
+        return search.nearest(root, point, k, maxDistance, filter, out);
+    }
+
+    /**
+     * 快照节点，只读
+     * <p>
+     * 指针节点有4个子节点；叶子节点坐标按x、y、z连续存放在数组中，空节点没有值
+     *
+     * @param <V> 值
+     */
+    static final class Cell<V> {
+        private static final float[] NO_POINTS = new float[0];
+        private static final Object[] NO_VALUES = new Object[0];
+        private final float x;
+        private final float z;
+        private final float w;
+        private final float h;
+        private final Cell<V> nw;
+        private final Cell<V> ne;
+        private final Cell<V> sw;
+        private final Cell<V> se;
+        /**
+         * 坐标，每个值3个：x y z
+         */
+        private final float[] points;
+        private final Object[] values;
+
+        /**
+         * 指针节点
+         */
+        Cell(float x, float z, float w, float h, Cell<V> nw, Cell<V> ne, Cell<V> sw, Cell<V> se) {
+            this.x = x;
+            this.z = z;
+            this.w = w;
+            this.h = h;
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.points = NO_POINTS;
+            this.values = NO_VALUES;
+        }
+
+        /**
+         * 叶子或空节点
+         *
+         * @param points 坐标，每个值3个：x y z
+         * @param values 值
+         */
+        Cell(float x, float z, float w, float h, float[] points, Object[] values) {
+            this.x = x;
+            this.z = z;
+            this.w = w;
+            this.h = h;
+            this.nw = null;
+            this.ne = null;
+            this.sw = null;
+            this.se = null;
+            this.points = values.length == 0 ? NO_POINTS : points;
+            this.values = values.length == 0 ? NO_VALUES : values;
+        }
+    }
+
+    /**
+     * 快照节点查询
+     */
+    private static final class CellSearch<V> extends PointSearch<V, Cell<V>> {
+        @Override
+        float x(Cell<V> node) {
+            return node.x;
+        }
+
+        @Override
+        float z(Cell<V> node) {
+            return node.z;
+        }
+
+        @Override
+        float w(Cell<V> node) {
+            return node.w;
+        }
+
+        @Override
+        float h(Cell<V> node) {
+            return node.h;
+        }
+
+        @Override
+        boolean isPointer(Cell<V> node) {
+            return node.nw != null;
+        }
+
+        @Override
+        Cell<V> child(Cell<V> node, int quadrant) {
+            switch (quadrant) {
+                case 0:
+                    return node.nw;
+                case 1:
+                    return node.ne;
+                case 2:
+                    return node.sw;
+                default:
+                    return node.se;
+            }
+        }
+
+        @Override
+        int size(Cell<V> node) {
+            return node.values.length;
+        }
+
+        @Override
+        float pointX(Cell<V> node, int i) {
+            return node.points[i * 3];
+        }
+
+        @Override
+        float pointZ(Cell<V> node, int i) {
+            return node.points[i * 3 + 2];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        V value(Cell<V> node, int i) {
+            return (V) node.values[i];
+        }
+
+        @Override
+        Vector3 point(Cell<V> node, int i) {
+            return new Vector3(node.points[i * 3], node.points[i * 3 + 1], node.points[i * 3 + 2]);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.jzy.ai.quadtree.point;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * 坐标点四叉树查询，{@link PointQuadTree} 和 {@link PointQuadTreeSnapshot} 共用
+ * <p>
+ * 节点结构由子类通过访问方法提供，查询算法只有一份。无状态，可多线程共享。
+ *
+ * @param <V> 值
+ * @param <N> 节点
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+abstract class PointSearch<V, N> {
+    /**
+     * 查询范围类型
+     */
+    private static final int SHAPE_RECT = 0;
+    private static final int SHAPE_CIRCLE = 1;
+    private static final int SHAPE_SECTOR = 2;
+
+    abstract float x(N node);
+
+    abstract float z(N node);
+
+    abstract float w(N node);
+
+    abstract float h(N node);
+
+    /**
+     * 是否为指针节点
+     */
+    abstract boolean isPointer(N node);
+
+    /**
+     * 子节点，按nw、ne、sw、se顺序
+     */
+    abstract N child(N node, int quadrant);
+
+    /**
+     * 叶子节点值的个数，空节点为0
+     */
+    abstract int size(N node);
+
+    abstract float pointX(N node, int i);
+
+    abstract float pointZ(N node, int i);
+
+    abstract V value(N node, int i);
+
+    /**
+     * 回调使用的坐标
+     */
+    abstract Vector3 point(N node, int i);
+
+    /**
+     * 矩形范围查询
+     *
+     * @param visitor 与out二选一
+     * @param out     与visitor二选一
+     * @return 查询到的个数
+     */
+    int queryRect(N root, float minX, float minZ, float maxX, float maxZ, PointVisitor<V> visitor, V[] out) {
+        return result(search(root, SHAPE_RECT, minX, minZ, maxX, maxZ, 0, 0, 0, 0, 0, 0, visitor, out, 0));
+    }
+
+    /**
+     * 圆形范围查询
+     */
+    int queryCircle(N root, Vector3 center, float radius, PointVisitor<V> visitor, V[] out) {
+        return result(search(root, SHAPE_CIRCLE, center.x - radius, center.z - radius, center.x + radius,
+                center.z + radius, center.x, center.z, radius * radius, 0, 0, 0, visitor, out, 0));
+    }
+
+    /**
+     * 扇形范围查询
+     */
+    int querySector(N root, Vector3 position, Vector3 sourceDirection, float distance, float radius, float degrees,
+                    PointVisitor<V> visitor, V[] out) {
+        // unity旋转，y为绕y轴角度，0度朝向z轴正方向
+        double yaw = Math.toRadians(sourceDirection.y);
+        float dirX = (float) Math.sin(yaw);
+        float dirZ = (float) Math.cos(yaw);
+        // 扇形顶点
+        float cx = position.x + dirX * distance;
+        float cz = position.z + dirZ * distance;
+        // 整圆按圆形判断，避免正后方的点因浮点误差被排除
+        int shape = degrees >= 360 ? SHAPE_CIRCLE : SHAPE_SECTOR;
+        float cosHalf = (float) Math.cos(Math.toRadians(Math.min(degrees, 360) / 2));
+        return result(search(root, shape, cx - radius, cz - radius, cx + radius, cz + radius, cx, cz,
+                radius * radius, dirX, dirZ, cosHalf, visitor, out, 0));
+    }
+
+    /**
+     * 查询结果，停止查询时为负数
+     */
+    private static int result(int count) {
+        return count < 0 ? ~count : count;
+    }
+
+    /**
+     * 范围查询，先按节点矩形排除，再精确判断坐标点
+     *
+     * @return 查询到的个数，停止查询时为个数取反
+     */
+    private int search(N node, int shape, float minX, float minZ, float maxX, float maxZ, float cx, float cz,
+                       float radiusSq, float dirX, float dirZ, float cosHalf, PointVisitor<V> visitor, V[] out,
+                       int count) {
+        if (x(node) > maxX || x(node) + w(node) < minX || z(node) > maxZ || z(node) + h(node) < minZ) {
+            return count;
+        }
+        if (shape != SHAPE_RECT) {
+            // 节点矩形到圆心的最近距离
+            if (minDistanceSq(node, cx, cz) > radiusSq) {
+                return count;
+            }
+        }
+        if (isPointer(node)) {
+            for (int quadrant = 0; quadrant < 4 && count >= 0; quadrant++) {
+                count = search(child(node, quadrant), shape, minX, minZ, maxX, maxZ, cx, cz, radiusSq, dirX, dirZ,
+                        cosHalf, visitor, out, count);
+            }
+            return count;
+        }
+        int size = size(node);
+        for (int i = 0; i < size; i++) {
+            if (!inShape(pointX(node, i), pointZ(node, i), shape, minX, minZ, maxX, maxZ, cx, cz, radiusSq, dirX,
+                    dirZ, cosHalf)) {
+                continue;
+            }
+            if (out != null) {
+                out[count++] = value(node, i);
+                if (count == out.length) {
+                    return ~count;
+                }
+            } else {
+                count++;
+                if (!visitor.visit(value(node, i), point(node, i))) {
+                    return ~count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean inShape(float x, float z, int shape, float minX, float minZ, float maxX, float maxZ,
+                                   float cx, float cz, float radiusSq, float dirX, float dirZ, float cosHalf) {
+        if (x < minX || x > maxX || z < minZ || z > maxZ) {
+            return false;
+        }
+        if (shape == SHAPE_RECT) {
+            return true;
+        }
+        float dx = x - cx;
+        float dz = z - cz;
+        float distanceSq = dx * dx + dz * dz;
+        if (distanceSq > radiusSq) {
+            return false;
+        }
+        if (shape == SHAPE_CIRCLE || distanceSq == 0) {
+            return true;
+        }
+        // 与方向的夹角不超过扇形角度一半：cos >= cosHalf
+        float dot = dx * dirX + dz * dirZ;
+        if (cosHalf >= 0) {
+            return dot >= 0 && dot * dot >= cosHalf * cosHalf * distanceSq;
+        }
+        return dot >= 0 || dot * dot <= cosHalf * cosHalf * distanceSq;
+    }
+
+    /**
+     * 最近的k个值
+     * <p>
+     * 按节点矩形到查询点的最近距离由近到远访问节点，已找到k个值后，节点距离超过第k近的距离即停止。
+     * 过滤条件在遍历时判断，只对距离可能进入结果的值调用。
+     */
+    @SuppressWarnings("unchecked")
+    int nearest(N root, Vector3 point, int k, float maxDistance, Predicate<V> filter, V[] out) {
+        k = Math.min(k, out.length);
+        if (k <= 0 || maxDistance < 0) {
+            return 0;
+        }
+        float x = point.x;
+        float z = point.z;
+        float maxDistanceSq = maxDistance == Float.MAX_VALUE ? Float.MAX_VALUE : maxDistance * maxDistance;
+        // 结果最大堆，值直接存放在out中
+        float[] resultDistances = new float[k];
+        int count = 0;
+        // 节点最小堆，Object数组避免创建泛型数组
+        Object[] nodes = new Object[16];
+        float[] nodeDistances = new float[16];
+        int nodeCount = 0;
+        float rootDistance = minDistanceSq(root, x, z);
+        if (rootDistance <= maxDistanceSq) {
+            nodes[nodeCount] = root;
+            nodeDistances[nodeCount++] = rootDistance;
+        }
+        while (nodeCount > 0) {
+            N node = (N) nodes[0];
+            float distance = nodeDistances[0];
+            nodeCount--;
+            nodes[0] = nodes[nodeCount];
+            nodeDistances[0] = nodeDistances[nodeCount];
+            nodes[nodeCount] = null;
+            siftDown(nodes, nodeDistances, nodeCount);
+            float bound = count < k ? maxDistanceSq : resultDistances[0];
+            if (distance > bound || (count == k && distance == bound)) {
+                break;
+            }
+            if (isPointer(node)) {
+                for (int quadrant = 0; quadrant < 4; quadrant++) {
+                    N child = child(node, quadrant);
+                    float childDistance = minDistanceSq(child, x, z);
+                    if (childDistance > bound) {
+                        continue;
+                    }
+                    if (nodeCount == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, nodeCount * 2);
+                        nodeDistances = Arrays.copyOf(nodeDistances, nodeCount * 2);
+                    }
+                    nodes[nodeCount] = child;
+                    nodeDistances[nodeCount] = childDistance;
+                    siftUp(nodes, nodeDistances, nodeCount++);
+                }
+                continue;
+            }
+            int size = size(node);
+            for (int i = 0; i < size; i++) {
+                float dx = pointX(node, i) - x;
+                float dz = pointZ(node, i) - z;
+                float distanceSq = dx * dx + dz * dz;
+                if (count < k ? distanceSq > maxDistanceSq : distanceSq >= resultDistances[0]) {
+                    continue;
+                }
+                V value = value(node, i);
+                if (filter != null && !filter.test(value)) {
+                    continue;
+                }
+                if (count < k) {
+                    out[count] = value;
+                    resultDistances[count] = distanceSq;
+                    resultUp(out, resultDistances, count++);
+                } else {
+                    out[0] = value;
+                    resultDistances[0] = distanceSq;
+                    resultDown(out, resultDistances, 0, k);
+                }
+            }
+        }
+        // 堆排序为由近到远
+        for (int n = count - 1; n > 0; n--) {
+            swap(out, resultDistances, 0, n);
+            resultDown(out, resultDistances, 0, n);
+        }
+        return count;
+    }
+
+    /**
+     * 节点矩形到坐标点的最近距离平方
+     */
+    private float minDistanceSq(N node, float x, float z) {
+        float dx = Math.max(Math.max(x(node) - x, x - x(node) - w(node)), 0);
+        float dz = Math.max(Math.max(z(node) - z, z - z(node) - h(node)), 0);
+        return dx * dx + dz * dz;
+    }
+
+    private static <T> void siftUp(T[] nodes, float[] distances, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (distances[parent] <= distances[i]) {
+                return;
+            }
+            swap(nodes, distances, i, parent);
+            i = parent;
+        }
+    }
+
+    private static <T> void siftDown(T[] nodes, float[] distances, int size) {
+        int i = 0;
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && distances[child + 1] < distances[child]) {
+                child++;
+            }
+            if (distances[i] <= distances[child]) {
+                return;
+            }
+            swap(nodes, distances, i, child);
+            i = child;
+        }
+    }
+
+    private static <T> void resultUp(T[] values, float[] distances, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (distances[parent] >= distances[i]) {
+                return;
+            }
+            swap(values, distances, i, parent);
+            i = parent;
+        }
+    }
+
+    private static <T> void resultDown(T[] values, float[] distances, int i, int size) {
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[i] >= distances[child]) {
+                return;
+            }
+            swap(values, distances, i, child);
+            i = child;
+        }
+    }
+
+    private static <T> void swap(T[] values, float[] distances, int i, int j) {
+        T value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        float distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+}
@@ -0,0 +1,23 @@
+package com.jzy.ai.quadtree.point;
+
+import com.jzy.javalib.math.geometry.Vector3;
+
+/**
+ * 坐标点四叉树查询回调
+ *
+ * @param <V> 值
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+@FunctionalInterface
+public interface PointVisitor<V> {
+
+    /**
+     * 访问查询到的值
+     *
+     * @param value 值
+     * @param point 值的坐标，请勿修改
+     * @return false 停止查询
+     */
+    boolean visit(V value, Vector3 point);
+}
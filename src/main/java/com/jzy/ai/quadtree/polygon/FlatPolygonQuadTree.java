@@ -0,0 +1,226 @@
+package com.jzy.ai.quadtree.polygon;
+
+import com.jzy.ai.nav.polygon.Polygon;
+import com.jzy.ai.quadtree.Data;
+import com.jzy.ai.quadtree.Node;
+import com.jzy.ai.quadtree.NodeType;
+import com.jzy.javalib.math.geometry.Vector3;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数组存储的多边形四叉树，由 {@link PolygonGuadTree} 压平得到，只读
+ * <p>
+ * 节点矩形存放在float数组，子节点用序号表示，同一节点的4个子节点连续存放(nw、ne、sw、se)，
+ * 叶子节点的多边形编号存放在int数组中。结构与原四叉树一致，不再为每个节点创建矩形多边形和数据包装对象。
+ * 定位坐标点不分配对象，返回多边形编号。
+ * <p>
+ * 构建后可多线程共享。
+ *
+ * @author JiangZhiYong
+ * @mail 359135103@qq.com
+ */
+public final class FlatPolygonQuadTree {
+    /**
+     * 多边形，编号为数组位置
+     */
+    private final Polygon[] polygons;
+    /**
+     * 多边形外包矩形，每个多边形4个：minX minZ maxX maxZ，精确检测前先排除
+     */
+    private final float[] polygonBounds;
+    /**
+     * 节点矩形，每个节点4个：x z w h
+     */
+    private final float[] nodeBounds;
+    /**
+     * 第一个子节点序号，叶子节点为-1
+     */
+    private final int[] nodeChildren;
+    /**
+     * 叶子节点多边形编号为 polygonPool[nodeOffsets[n]..nodeOffsets[n+1])
+     */
+    private final int[] nodeOffsets;
+    private final int[] polygonPool;
+
+    /**
+     * @param tree     已插入多边形的四叉树
+     * @param polygons 多边形，编号为列表位置
+     */
+    public FlatPolygonQuadTree(PolygonGuadTree tree, List<Polygon> polygons) {
+        this.polygons = polygons.toArray(new Polygon[0]);
+        this.polygonBounds = new float[this.polygons.length * 4];
+        Map<Polygon, Integer> ids = new IdentityHashMap<>(polygons.size());
+        for (int i = 0; i < this.polygons.length; i++) {
+            ids.put(this.polygons[i], i);
+            float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            for (Vector3 point : this.polygons[i].points) {
+                minX = Math.min(minX, point.x);
+                minZ = Math.min(minZ, point.z);
+                maxX = Math.max(maxX, point.x);
+                maxZ = Math.max(maxZ, point.z);
+            }
+            polygonBounds[i * 4] = minX;
+            polygonBounds[i * 4 + 1] = minZ;
+            polygonBounds[i * 4 + 2] = maxX;
+            polygonBounds[i * 4 + 3] = maxZ;
+        }
+
+        // 广度优先编号，同一节点的子节点连续
+        int nodeCount = 0;
+        int dataCount = 0;
+        ArrayDeque<Node<Polygon>> queue = new ArrayDeque<>();
+        queue.add(tree.getRootNode());
+        while (!queue.isEmpty()) {
+            Node<Polygon> node = queue.poll();
+            nodeCount++;
+            if (node.getNodeType() == NodeType.POINTER) {
+                queue.add(node.getNw());
+                queue.add(node.getNe());
+                queue.add(node.getSw());
+                queue.add(node.getSe());
+            } else if (node.getNodeType() == NodeType.LEAF) {
+                dataCount += node.getDatas().size();
+            }
+        }
+        this.nodeBounds = new float[nodeCount * 4];
+        this.nodeChildren = new int[nodeCount];
+        this.nodeOffsets = new int[nodeCount + 1];
+        this.polygonPool = new int[dataCount];
+
+        int index = 0;
+        int next = 1;
+        int size = 0;
+        queue.add(tree.getRootNode());
+        while (!queue.isEmpty()) {
+            Node<Polygon> node = queue.poll();
+            nodeBounds[index * 4] = node.getX();
+            nodeBounds[index * 4 + 1] = node.getZ();
+            nodeBounds[index * 4 + 2] = node.getW();
+            nodeBounds[index * 4 + 3] = node.getH();
+            nodeChildren[index] = -1;
+            if (node.getNodeType() == NodeType.POINTER) {
+                nodeChildren[index] = next;
+                next += 4;
+                queue.add(node.getNw());
+                queue.add(node.getNe());
+                queue.add(node.getSw());
+                queue.add(node.getSe());
+            } else if (node.getNodeType() == NodeType.LEAF) {
+                for (Data<Polygon> data : node.getDatas()) {
+                    Integer id = ids.get(data.getValue());
+                    if (id != null) {
+                        polygonPool[size++] = id;
+                    }
+                }
+            }
+            nodeOffsets[++index] = size;
+        }
+    }
+
+    /**
+     * 坐标点所在的叶子节点
+     *
+     * @param x
+     * @param z
+     * @return 不在四叉树范围内返回-1
+     */
+    public int findLeaf(float x, float z) {
+        int node = 0;
+        while (nodeChildren[node] >= 0) {
+            int o = node * 4;
+            float mx = nodeBounds[o] + nodeBounds[o + 2] / 2;
+            float mz = nodeBounds[o + 1] + nodeBounds[o + 3] / 2;
+            node = nodeChildren[node] + (x < mx ? 0 : 1) + (z < mz ? 0 : 2);
+        }
+        int o = node * 4;
+        if (x < nodeBounds[o] || z < nodeBounds[o + 1] || x > nodeBounds[o] + nodeBounds[o + 2]
+                || z > nodeBounds[o + 1] + nodeBounds[o + 3]) {
+            return -1;
+        }
+        return node;
+    }
+
+    /**
+     * 坐标点所在的多边形编号，多个多边形重叠时取中心点高度最接近的
+     *
+     * @param point
+     * @return 不在多边形内返回-1
+     */
+    public int locate(Vector3 point) {
+        int leaf = findLeaf(point.x, point.z);
+        if (leaf < 0) {
+            return -1;
+        }
+        // 多个多边形时高度差超过该值不选择，与PolygonGuadTree一致
+        float minDistance = Byte.MAX_VALUE;
+        int first = -1;
+        int closest = -1;
+        int matched = 0;
+        for (int i = nodeOffsets[leaf]; i < nodeOffsets[leaf + 1]; i++) {
+            int id = polygonPool[i];
+            int o = id * 4;
+            if (point.x < polygonBounds[o] || point.z < polygonBounds[o + 1] || point.x > polygonBounds[o + 2]
+                    || point.z > polygonBounds[o + 3]) {
+                continue;
+            }
+            Polygon polygon = polygons[id];
+            if (!polygon.isInnerPoint(point)) {
+                continue;
+            }
+            if (matched++ == 0) {
+                first = id;
+            }
+            float distance = Math.abs(polygon.center.y - point.y);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = id;
+            }
+        }
+        return matched == 1 ? first : closest;
+    }
+
+    /**
+     * 坐标点所在的多边形
+     *
+     * @param point
+     * @param defaultValue 不在多边形内返回的默认值
+     * @return
+     */
+    public Polygon get(Vector3 point, Polygon defaultValue) {
+        int id = locate(point);
+        return id < 0 ? defaultValue : polygons[id];
+    }
+
+    /**
+     * 多边形编号对应的多边形
+     *
+     * @param id
+     * @return
+     */
+    public Polygon getPolygon(int id) {
+        return polygons[id];
+    }
+
+    /**
+     * 节点数
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeChildren.length;
+    }
+
+    /**
+     * 叶子节点中的多边形数，包含重复
+     *
+     * @return
+     */
+    public int getRealCount() {
+        return polygonPool.length;
+    }
+}